@@ -14,7 +14,10 @@ mkdir -p jar
 javac -d out/production/turaco/ src/**/*.java
 check_error "Javac failed"
 
+java -cp out/production/turaco bexpred.NPNTable out/production/turaco/bexpred/npn4.dat
+check_error "Writing the NPN table failed"
+
 cd out/production/turaco
-jar -cvfe ../../../jar/turaco.jar bexpred.BExpred **/*.class
+jar -cvfe ../../../jar/turaco.jar bexpred.BExpred **/*.class bexpred/npn4.dat
 check_error "Creating jar failed"
 cd ../../../
\ No newline at end of file
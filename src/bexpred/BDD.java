@@ -0,0 +1,463 @@
+package bexpred;
+
+/*
+ * BExpred - Boolean Expression Reducer
+ * Goal: To reduce specified boolean expressions
+ * Current state: Evaluates a given expression with input values
+ * Copyright (c) 2003 Benjamin Biron
+ * License: GPL
+
+    This file is part of BExpred.
+
+    BExpred is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    BExpred is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with BExpred; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+ */
+
+class BDD {
+    // A reduced ordered binary decision diagram package. Every node is an int, the
+    // index of its entry in the node arrays:
+    //       Node 0 is FALSE and node 1 is TRUE
+    //       Any other node tests the variable at level[node], and goes to low[node] if
+    //       it's 0 and to high[node] if it's 1. The levels only go up along a path.
+    // The unique table makes sure there's only one node for each (level, low, high),
+    // so two functions built in the same BDD are equal if and only if their nodes are.
+    //
+    // The nodes live as long as they can be reached from a protected node or from
+    // the stack of intermediate results. The others are collected when the node
+    // arrays are full, before they are grown up to the node limit.
+
+    public static final int FALSE = 0;
+    public static final int TRUE = 1;
+
+    // The largest number of nodes, set with the turaco.bdd.nodes property
+    static final int DEFAULT_NODE_LIMIT = Math.max(1024, Integer.getInteger("turaco.bdd.nodes", 1 << 22).intValue());
+
+    private static final int TERMINAL_LEVEL = Integer.MAX_VALUE; // Below every variable
+    private static final int FREE = -1; // The level of unused nodes
+
+    private final int node_limit;
+    private int[] level;
+    private int[] low;
+    private int[] high;
+    private int[] next; // The next node in the same unique table bucket, or in the free list
+    private int[] refs; // How many times the node was protected
+    private int[] buckets; // The first node of each bucket of the unique table
+    private int free_list = 0; // 0 when empty, node 0 is never free
+    private int node_count = 2;
+    private int gc_count = 0;
+
+    // The ITE cache, direct mapped: slot i holds ite(cache_f[i], cache_g[i], cache_h[i]) = cache_r[i]
+    private int[] cache_f;
+    private int[] cache_g;
+    private int[] cache_h;
+    private int[] cache_r;
+
+    private int[] temps = new int[64]; // The intermediate results still in use
+    private int temp_count = 0;
+
+    // The frames of the ite() calls in progress
+    private int[] frame_f = new int[64];
+    private int[] frame_g = new int[64];
+    private int[] frame_h = new int[64];
+    private int[] frame_top = new int[64];
+    private int[] frame_state = new int[64]; // 0 before the cofactors, 1 after the first, 2 after both
+    private int frame_count = 0;
+
+    public BDD() {
+        this(DEFAULT_NODE_LIMIT);
+    }
+
+    public BDD(int nodeLimit) {
+        this.node_limit = nodeLimit;
+        this.allocate(Math.min(1024, nodeLimit));
+        this.level[FALSE] = this.level[TRUE] = TERMINAL_LEVEL;
+        this.high[TRUE] = this.low[TRUE] = TRUE;
+    }
+
+    private void allocate(int capacity) {
+        // (Re)allocates the arrays for the given number of nodes, keeping the nodes
+        int[] oldLevel = this.level, oldLow = this.low, oldHigh = this.high, oldRefs = this.refs;
+        int used = oldLevel == null ? 0 : oldLevel.length;
+
+        this.level = new int[capacity];
+        this.low = new int[capacity];
+        this.high = new int[capacity];
+        this.next = new int[capacity];
+        this.refs = new int[capacity];
+        if (used != 0) {
+            System.arraycopy(oldLevel, 0, this.level, 0, used);
+            System.arraycopy(oldLow, 0, this.low, 0, used);
+            System.arraycopy(oldHigh, 0, this.high, 0, used);
+            System.arraycopy(oldRefs, 0, this.refs, 0, used);
+        }
+        for (int i = used; i < capacity; i++) {
+            this.level[i] = FREE;
+        }
+
+        this.buckets = new int[capacity];
+        int cacheSize = 1;
+        while (cacheSize * 2 <= capacity) {
+            cacheSize *= 2;
+        }
+        this.cache_f = new int[cacheSize];
+        this.cache_g = new int[cacheSize];
+        this.cache_h = new int[cacheSize];
+        this.cache_r = new int[cacheSize];
+        this.rebuild();
+    }
+
+    private void rebuild() {
+        // Refills the unique table and the free list, and empties the cache
+        this.free_list = 0;
+        for (int i = 0; i < this.buckets.length; i++) {
+            this.buckets[i] = 0;
+        }
+        for (int i = this.level.length - 1; i >= 2; i--) {
+            if (this.level[i] == FREE) {
+                this.next[i] = this.free_list;
+                this.free_list = i;
+            } else {
+                int bucket = this.hash(this.level[i], this.low[i], this.high[i]) % this.buckets.length;
+                this.next[i] = this.buckets[bucket];
+                this.buckets[bucket] = i;
+            }
+        }
+        for (int i = 0; i < this.cache_f.length; i++) {
+            this.cache_f[i] = -1; // No node is -1, so the slot never matches
+        }
+    }
+
+    private int hash(int level, int low, int high) {
+        long key = ((long) level * 0x9E3779B97F4A7C15L) ^ ((long) low * 0xC2B2AE3D27D4EB4FL) ^ high;
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 33); // Positive
+    }
+
+    public int getNodeCount() {
+        return this.node_count;
+    }
+
+    public int getGCCount() {
+        return this.gc_count;
+    }
+
+    /**
+     * @param var the level of the variable, variables with lower levels are tested first
+     * @return the function that is only true when the variable is
+     */
+    public int var(int var) {
+        return this.makeNode(var, FALSE, TRUE);
+    }
+
+    public int not(int f) {
+        return this.ite(f, FALSE, TRUE);
+    }
+
+    public int and(int f, int g) {
+        return this.ite(f, g, FALSE);
+    }
+
+    public int or(int f, int g) {
+        return this.ite(f, TRUE, g);
+    }
+
+    public int xor(int f, int g) {
+        int notG = this.not(g);
+        this.push(notG);
+        int result = this.ite(f, notG, g);
+        this.pop(1);
+        return result;
+    }
+
+    /**
+     * @param f          a function
+     * @param levelCount the number of variables
+     * @return values of the variables, by level, making f true, or null if f is
+     *         FALSE. The variables f doesn't need are false.
+     */
+    public boolean[] findPath(int f, int levelCount) {
+        if (f == FALSE)
+            return null;
+        // Every node but FALSE leads to TRUE, since equal children are merged
+        boolean[] values = new boolean[levelCount];
+        while (f != TRUE) {
+            if (this.low[f] != FALSE) {
+                f = this.low[f];
+            } else {
+                values[this.level[f]] = true;
+                f = this.high[f];
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @param f          a function
+     * @param levelCount the number of variables
+     * @return whether f depends on the variable of each level
+     */
+    public boolean[] getSupport(int f, int levelCount) {
+        boolean[] support = new boolean[levelCount];
+        boolean[] seen = new boolean[this.level.length];
+        int[] nodes = new int[16];
+        int nodeCount = 0;
+
+        nodes[nodeCount++] = f;
+        while (nodeCount > 0) {
+            f = nodes[--nodeCount];
+            if (f == FALSE || f == TRUE || seen[f])
+                continue;
+            seen[f] = true;
+            support[this.level[f]] = true;
+            if (nodeCount + 2 > nodes.length) {
+                int[] grown = new int[nodes.length * 2];
+                System.arraycopy(nodes, 0, grown, 0, nodeCount);
+                nodes = grown;
+            }
+            nodes[nodeCount++] = this.low[f];
+            nodes[nodeCount++] = this.high[f];
+        }
+        return support;
+    }
+
+    /**
+     * Keeps a node and the ones below it from being collected, until it's unprotected
+     * as many times as it was protected.
+     *
+     * @param f the node to keep
+     */
+    public void protect(int f) {
+        this.refs[f]++;
+    }
+
+    public void unprotect(int f) {
+        if (this.refs[f] == 0)
+            throw new IllegalStateException("Node " + f + " isn't protected");
+        this.refs[f]--;
+    }
+
+    /**
+     * Keeps an intermediate result from being collected, until it's popped
+     *
+     * @param f the node to keep
+     */
+    void push(int f) {
+        if (this.temp_count == this.temps.length) {
+            int[] grown = new int[this.temps.length * 2];
+            System.arraycopy(this.temps, 0, grown, 0, this.temp_count);
+            this.temps = grown;
+        }
+        this.temps[this.temp_count++] = f;
+    }
+
+    void pop(int count) {
+        this.temp_count -= count;
+    }
+
+    /**
+     * @param depth 0 for the last intermediate result pushed, 1 for the one before...
+     * @return the intermediate result
+     */
+    int peek(int depth) {
+        return this.temps[this.temp_count - 1 - depth];
+    }
+
+    /**
+     * @param f the condition
+     * @param g the function where f is true
+     * @param h the function where f is false
+     * @return the function if f then g else h
+     */
+    public int ite(int f, int g, int h) {
+        // The recursion on the cofactors is as deep as the number of variables, so it's
+        // run on a stack of frames rather than on the call stack. A frame first gets the
+        // result where its top variable is 1, then where it's 0, then makes its node.
+        // The results of the frames are kept on the stack of intermediate results.
+        int base = this.frame_count, frame, top, slot, result, t, e;
+        this.pushFrame(f, g, h);
+        while (this.frame_count > base) {
+            frame = this.frame_count - 1;
+            f = this.frame_f[frame];
+            g = this.frame_g[frame];
+            h = this.frame_h[frame];
+            top = this.frame_top[frame];
+
+            if (this.frame_state[frame] == 0) {
+                result = this.iteTerminal(f, g, h);
+                if (result != -1) {
+                    this.frame_count--;
+                    this.push(result);
+                    continue;
+                }
+                top = Math.min(this.level[f], Math.min(this.level[g], this.level[h]));
+                this.frame_top[frame] = top;
+                this.frame_state[frame] = 1;
+                this.pushFrame(this.cofactor(f, top, true), this.cofactor(g, top, true), this.cofactor(h, top, true));
+            } else if (this.frame_state[frame] == 1) {
+                this.frame_state[frame] = 2;
+                this.pushFrame(this.cofactor(f, top, false), this.cofactor(g, top, false), this.cofactor(h, top, false));
+            } else {
+                e = this.peek(0);
+                t = this.peek(1);
+                result = this.makeNode(top, e, t);
+                this.pop(2);
+
+                // A collection while making the node empties the cache, so the slot is written last
+                slot = (this.hash(f, g, h) >>> 3) & (this.cache_f.length - 1);
+                this.cache_f[slot] = f;
+                this.cache_g[slot] = g;
+                this.cache_h[slot] = h;
+                this.cache_r[slot] = result;
+                this.frame_count--;
+                this.push(result);
+            }
+        }
+
+        result = this.peek(0);
+        this.pop(1);
+        return result;
+    }
+
+    private int iteTerminal(int f, int g, int h) {
+        // The result of ite() without going down the cofactors, or -1 if it isn't known
+        if (f == TRUE)
+            return g;
+        if (f == FALSE)
+            return h;
+        if (g == h)
+            return g;
+        if (g == TRUE && h == FALSE)
+            return f;
+
+        int slot = (this.hash(f, g, h) >>> 3) & (this.cache_f.length - 1);
+        if (this.cache_f[slot] == f && this.cache_g[slot] == g && this.cache_h[slot] == h)
+            return this.cache_r[slot];
+        return -1;
+    }
+
+    private void pushFrame(int f, int g, int h) {
+        if (this.frame_count == this.frame_f.length) {
+            int length = this.frame_f.length * 2;
+            this.frame_f = grow(this.frame_f, length, this.frame_count);
+            this.frame_g = grow(this.frame_g, length, this.frame_count);
+            this.frame_h = grow(this.frame_h, length, this.frame_count);
+            this.frame_top = grow(this.frame_top, length, this.frame_count);
+            this.frame_state = grow(this.frame_state, length, this.frame_count);
+        }
+        this.frame_f[this.frame_count] = f;
+        this.frame_g[this.frame_count] = g;
+        this.frame_h[this.frame_count] = h;
+        this.frame_state[this.frame_count++] = 0;
+    }
+
+    private static int[] grow(int[] from, int length, int count) {
+        int[] grown = new int[length];
+        System.arraycopy(from, 0, grown, 0, count);
+        return grown;
+    }
+
+    private int cofactor(int f, int top, boolean value) {
+        if (this.level[f] != top)
+            return f;
+        return value ? this.high[f] : this.low[f];
+    }
+
+    private int makeNode(int var, int low, int high) {
+        if (low == high)
+            return low;
+
+        int bucket = this.hash(var, low, high) % this.buckets.length;
+        for (int i = this.buckets[bucket]; i != 0; i = this.next[i]) {
+            if (this.level[i] == var && this.low[i] == low && this.high[i] == high)
+                return i;
+        }
+
+        if (this.free_list == 0) {
+            // The children are reachable from the callers' operands or the temporaries
+            this.push(low);
+            this.push(high);
+            this.gc();
+            if (this.node_count * 2 > this.level.length && this.level.length < this.node_limit)
+                this.allocate((int) Math.min((long) this.level.length * 2, this.node_limit));
+            this.pop(2);
+            // Nearly full even after collecting, going on would only collect again and again
+            if (this.level.length - this.node_count < this.level.length / 8)
+                throw new IllegalStateException("BDD node limit of " + this.node_limit + " reached");
+            bucket = this.hash(var, low, high) % this.buckets.length;
+        }
+
+        int node = this.free_list;
+        this.free_list = this.next[node];
+        this.level[node] = var;
+        this.low[node] = low;
+        this.high[node] = high;
+        this.refs[node] = 0;
+        this.next[node] = this.buckets[bucket];
+        this.buckets[bucket] = node;
+        this.node_count++;
+        return node;
+    }
+
+    /**
+     * Frees the nodes that can't be reached from a protected node or an
+     * intermediate result
+     */
+    public void gc() {
+        boolean[] marked = new boolean[this.level.length];
+        int[] stack = new int[64];
+        int stackSize = 0, node;
+
+        marked[FALSE] = marked[TRUE] = true;
+        for (int i = 0; i < this.level.length + this.temp_count; i++) {
+            if (i < this.level.length) {
+                if (this.level[i] == FREE || this.refs[i] == 0)
+                    continue;
+                node = i;
+            } else {
+                node = this.temps[i - this.level.length];
+            }
+
+            if (!marked[node]) {
+                marked[node] = true;
+                stack[stackSize++] = node;
+            }
+            while (stackSize > 0) {
+                node = stack[--stackSize];
+                if (stackSize + 2 > stack.length) {
+                    int[] grown = new int[stack.length * 2];
+                    System.arraycopy(stack, 0, grown, 0, stackSize);
+                    stack = grown;
+                }
+                if (!marked[this.low[node]]) {
+                    marked[this.low[node]] = true;
+                    stack[stackSize++] = this.low[node];
+                }
+                if (!marked[this.high[node]]) {
+                    marked[this.high[node]] = true;
+                    stack[stackSize++] = this.high[node];
+                }
+            }
+        }
+
+        this.node_count = 2;
+        for (int i = 2; i < this.level.length; i++) {
+            if (!marked[i])
+                this.level[i] = FREE;
+            else
+                this.node_count++;
+        }
+        this.rebuild();
+        this.gc_count++;
+    }
+}
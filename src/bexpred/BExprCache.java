@@ -0,0 +1,161 @@
+package bexpred;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+
+/*
+ * BExpred - Boolean Expression Reducer
+ * Goal: To reduce specified boolean expressions
+ * Current state: Evaluates a given expression with input values
+ * Copyright (c) 2003 Benjamin Biron
+ * License: GPL
+
+    This file is part of BExpred.
+
+    BExpred is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    BExpred is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with BExpred; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+ */
+
+class BExprCache {
+    // Remembers the parsed and compiled forms of expressions, so typing the same
+    // expression again, or parsing the same rules over and over, only parses them
+    // once. The keys are the expressions without their spaces and in upper case,
+    // which the parser ignores anyway. The cache is bounded by the total length of
+    // its keys, dropping the least recently used entries first.
+    private static final int MAX_CHARS = Integer.getInteger("turaco.parse.chars", 1 << 20).intValue();
+
+    private static final Hashtable entries = new Hashtable();
+    private static final ParsedExpr head = new ParsedExpr(null, null, null, null); // Most recent after it
+    private static long chars = 0;
+    private static long hits = 0;
+    private static long misses = 0;
+    private static long evictions = 0;
+
+    static {
+        head.prev = head;
+        head.next = head;
+    }
+
+    /**
+     * @param expression an expression as typed
+     * @return the key of the expression, without spaces and in upper case
+     */
+    static String normalize(String expression) {
+        StringBuffer aKey = new StringBuffer(expression.length());
+        char aChar;
+        String trimmed = expression.trim();
+        for (int i = 0; i < trimmed.length(); i++) {
+            aChar = trimmed.charAt(i);
+            if (aChar != ' ')
+                aKey.append(aChar);
+        }
+        return aKey.toString().toUpperCase();
+    }
+
+    /**
+     * @param key the normalized expression
+     * @return the parsed expression, or null if it isn't cached
+     */
+    static synchronized ParsedExpr get(String key) {
+        ParsedExpr parsed = (ParsedExpr) entries.get(key);
+        if (parsed == null) {
+            misses++;
+            return null;
+        }
+
+        hits++;
+        unlink(parsed);
+        linkFirst(parsed);
+        return parsed;
+    }
+
+    /**
+     * Caches a parsed expression, unless its key takes more than a quarter of the cache
+     *
+     * @param parsed the expression, which must not be changed afterwards
+     */
+    static synchronized void put(ParsedExpr parsed) {
+        if (parsed.key.length() > MAX_CHARS / 4)
+            return;
+
+        ParsedExpr old = (ParsedExpr) entries.put(parsed.key, parsed);
+        if (old != null) {
+            unlink(old);
+            chars -= old.key.length();
+        }
+        linkFirst(parsed);
+        chars += parsed.key.length();
+
+        while (chars > MAX_CHARS) {
+            old = head.prev;
+            unlink(old);
+            entries.remove(old.key);
+            chars -= old.key.length();
+            evictions++;
+        }
+    }
+
+    static synchronized void clear() {
+        entries.clear();
+        head.prev = head;
+        head.next = head;
+        chars = 0;
+    }
+
+    static synchronized int size() {
+        return entries.size();
+    }
+
+    static synchronized long getHits() {
+        return hits;
+    }
+
+    static synchronized long getMisses() {
+        return misses;
+    }
+
+    static synchronized long getEvictions() {
+        return evictions;
+    }
+
+    private static void unlink(ParsedExpr parsed) {
+        parsed.prev.next = parsed.next;
+        parsed.next.prev = parsed.prev;
+    }
+
+    private static void linkFirst(ParsedExpr parsed) {
+        parsed.prev = head;
+        parsed.next = head.next;
+        head.next.prev = parsed;
+        head.next = parsed;
+    }
+}
+
+class ParsedExpr {
+    // An expression as parsed and compiled, shared by the trees of that expression,
+    // none of which change it
+    final String key;
+    final BExprNode root;
+    final ArrayList vars;
+    final BExprProgram program;
+    ParsedExpr prev, next; // In the list of BExprCache
+
+    ParsedExpr(String key, BExprNode root, ArrayList vars, BExprProgram program) {
+        this.key = key;
+        this.root = root;
+        this.vars = vars;
+        this.program = program;
+    }
+}
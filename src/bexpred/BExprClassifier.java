@@ -0,0 +1,177 @@
+package bexpred;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.Random;
+
+/*
+ * BExpred - Boolean Expression Reducer
+ * Goal: To reduce specified boolean expressions
+ * Current state: Evaluates a given expression with input values
+ * Copyright (c) 2003 Benjamin Biron
+ * License: GPL
+
+    This file is part of BExpred.
+
+    BExpred is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    BExpred is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with BExpred; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+ */
+
+class BExprClassifier {
+    // Sorts many expressions into classes of equivalent ones without comparing every
+    // pair. Every expression is evaluated on the same random assignments of all the
+    // variables found in any of them, which gives its signature: equivalent
+    // expressions always have the same one, and different ones rarely do. Only the
+    // expressions with the same signature are then compared, with BExprComparator,
+    // to the first expression of each class with that signature.
+
+    // The number of 64 bit words of random assignments in a signature, set with the
+    // turaco.classify.words property
+    static final int SIGNATURE_WORDS = Math.max(1, Integer.getInteger("turaco.classify.words", 16).intValue());
+
+    private final BExprTree[] trees;
+    private int[] classes; // The class of every expression, null until classify() is called
+    private int class_count = 0;
+    private int exact_checks = 0;
+
+    public BExprClassifier(BExprTree[] trees) {
+        this.trees = trees;
+    }
+
+    /**
+     * @return the class of every expression, numbered from 0 in the order of their
+     *         first expression. Expressions in the same class are equivalent.
+     */
+    public int[] classify() {
+        if (this.classes != null)
+            return this.classes;
+
+        // The random values of every variable, in the order the variables are found
+        Hashtable indices = new Hashtable();
+        ArrayList words = new ArrayList();
+        Random random = new Random(0x7572616361L);
+        ArrayList vars;
+        for (int t = 0; t < this.trees.length; t++) {
+            vars = this.trees[t].getVars();
+            for (int i = 0; i < vars.size(); i++) {
+                if (indices.get(vars.get(i)) == null) {
+                    indices.put(vars.get(i), new Integer(words.size()));
+                    long[] varWords = new long[SIGNATURE_WORDS];
+                    for (int w = 0; w < SIGNATURE_WORDS; w++) {
+                        varWords[w] = random.nextLong();
+                    }
+                    words.add(varWords);
+                }
+            }
+        }
+
+        // The first expression of every class, by signature
+        Hashtable firsts = new Hashtable();
+        int[] firstOf = new int[this.trees.length]; // The first expression of every class
+        ArrayList candidates;
+        Signature aSignature;
+        int found;
+
+        this.classes = new int[this.trees.length];
+        for (int t = 0; t < this.trees.length; t++) {
+            aSignature = this.signature(this.trees[t], indices, words);
+            candidates = (ArrayList) firsts.get(aSignature);
+            if (candidates == null) {
+                candidates = new ArrayList();
+                firsts.put(aSignature, candidates);
+            }
+
+            found = -1;
+            for (int i = 0; i < candidates.size() && found == -1; i++) {
+                int c = ((Integer) candidates.get(i)).intValue();
+                BExprComparator aComparator = new BExprComparator(this.trees[firstOf[c]], this.trees[t]);
+                aComparator.setSimulationWords(0); // Already done by the signatures
+                this.exact_checks++;
+                if (aComparator.compare())
+                    found = c;
+            }
+            if (found == -1) {
+                found = this.class_count++;
+                firstOf[found] = t;
+                candidates.add(new Integer(found));
+            }
+            this.classes[t] = found;
+        }
+        return this.classes;
+    }
+
+    private Signature signature(BExprTree aTree, Hashtable indices, ArrayList words) {
+        ArrayList vars = aTree.getVars();
+        long[][] varWords = new long[vars.size()][];
+        for (int i = 0; i < vars.size(); i++) {
+            varWords[i] = (long[]) words.get(((Integer) indices.get(vars.get(i))).intValue());
+        }
+
+        BExprProgram program = aTree.getProgram();
+        long[] slotWords = new long[vars.size()];
+        long[] stack = new long[program.getMaxDepth()];
+        long[] outputs = new long[SIGNATURE_WORDS];
+        for (int w = 0; w < SIGNATURE_WORDS; w++) {
+            for (int i = 0; i < slotWords.length; i++) {
+                slotWords[i] = varWords[i][w];
+            }
+            outputs[w] = program.evaluateWords(slotWords, stack);
+        }
+        return new Signature(outputs);
+    }
+
+    public int getClassCount() {
+        this.classify();
+        return this.class_count;
+    }
+
+    /**
+     * @return the number of pairs of expressions that had to be compared exactly
+     */
+    public int getExactChecks() {
+        this.classify();
+        return this.exact_checks;
+    }
+}
+
+class Signature {
+    // The outputs of an expression on the random assignments, as a Hashtable key
+    private final long[] outputs;
+    private final int hash;
+
+    Signature(long[] outputs) {
+        long h = 0;
+        for (int i = 0; i < outputs.length; i++) {
+            h = (h ^ outputs[i]) * 0x9E3779B97F4A7C15L;
+        }
+        this.outputs = outputs;
+        this.hash = (int) (h ^ (h >>> 32));
+    }
+
+    public int hashCode() {
+        return this.hash;
+    }
+
+    public boolean equals(Object anObject) {
+        if (!(anObject instanceof Signature))
+            return false;
+        long[] other = ((Signature) anObject).outputs;
+        for (int i = 0; i < this.outputs.length; i++) {
+            if (this.outputs[i] != other[i])
+                return false;
+        }
+        return true;
+    }
+}
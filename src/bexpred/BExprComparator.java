@@ -0,0 +1,237 @@
+package bexpred;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.Random;
+
+/*
+ * BExpred - Boolean Expression Reducer
+ * Goal: To reduce specified boolean expressions
+ * Current state: Evaluates a given expression with input values
+ * Copyright (c) 2003 Benjamin Biron
+ * License: GPL
+
+    This file is part of BExpred.
+
+    BExpred is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    BExpred is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with BExpred; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+ */
+
+class BExprComparator {
+    // Decides if two expressions are equivalent with the cheapest check that can
+    // tell, most pairs compared in bulk being different:
+    //       TIER_STRUCTURE: the trees print the same, so they're equivalent
+    //       TIER_SIMULATION: both are evaluated on random assignments, 64 at a time, and
+    //       found different as soon as an output differs
+    //       TIER_EXHAUSTIVE: for a few variables, every row of the truth table is
+    //       evaluated instead, 64 at a time, stopping at the first one that differs
+    //       TIER_BDD: both are built in a BDD, where equivalent functions are the same node
+    //       TIER_SAT: over the node limit of the BDD, a miter of both is given to a SAT solver
+    // Variables are matched by name, and the ones the outputs don't depend on are
+    // left out. Whatever the tier, an assignment where they differ is kept.
+
+    public static final int TIER_STRUCTURE = 0;
+    public static final int TIER_SIMULATION = 1;
+    public static final int TIER_EXHAUSTIVE = 2;
+    public static final int TIER_BDD = 3;
+    public static final int TIER_SAT = 4;
+
+    // The number of 64 bit words of random assignments, set with the
+    // turaco.compare.words property
+    static final int SIMULATION_WORDS = Math.max(0, Integer.getInteger("turaco.compare.words", 2048).intValue());
+    static final int EXHAUSTIVE_VARS = 16; // Up to 2^10 words, the BDD is usually faster past that
+
+    private final BExprTree tree;
+    private final BExprTree aTree;
+    private final ArrayList names; // The variables of both trees, in the order of a BDD
+    private final int[] slots; // The position in names of the variable in each slot of tree
+    private final int[] aSlots;
+    private final long[] tree_words; // Scratch space for the evaluations
+    private final long[] a_tree_words;
+    private final long[] stack;
+    private boolean equivalent;
+    private int simulation_words = SIMULATION_WORDS;
+    private int tier = -1;
+    private Hashtable difference; // Where the trees differ, null if they're equivalent
+
+    public BExprComparator(BExprTree tree, BExprTree aTree) {
+        this.tree = tree;
+        this.aTree = aTree;
+
+        this.names = tree.getVarOrder();
+        ArrayList aOrder = aTree.getVarOrder();
+        for (int i = 0; i < aOrder.size(); i++) {
+            if (!this.names.contains(aOrder.get(i)))
+                this.names.add(aOrder.get(i));
+        }
+        this.slots = slotsOf(tree, this.names);
+        this.aSlots = slotsOf(aTree, this.names);
+        this.tree_words = new long[this.slots.length];
+        this.a_tree_words = new long[this.aSlots.length];
+        this.stack = new long[Math.max(tree.getProgram().getMaxDepth(), aTree.getProgram().getMaxDepth())];
+    }
+
+    private static int[] slotsOf(BExprTree aTree, ArrayList names) {
+        int[] slots = new int[aTree.getVarCount()];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = names.indexOf(aTree.getVars().get(i));
+        }
+        return slots;
+    }
+
+    /**
+     * @param words the number of 64 bit words of random assignments, 0 when the
+     *              trees were already simulated and found equal
+     */
+    void setSimulationWords(int words) {
+        this.simulation_words = words;
+    }
+
+    /**
+     * Runs the tiers until one of them can tell
+     *
+     * @return true if the expressions are equivalent
+     */
+    public boolean compare() {
+        if (this.tier != -1)
+            return this.equivalent;
+
+        if (this.tree.toString().equals(this.aTree.toString()))
+            this.setResult(TIER_STRUCTURE, null);
+        else if (this.names.size() <= EXHAUSTIVE_VARS)
+            this.compareRows(); // No dearer than the simulation, and sure
+        else if (!this.simulate())
+            this.compareBDDs();
+        return this.equivalent;
+    }
+
+    public boolean isEquivalent() {
+        return this.compare();
+    }
+
+    /**
+     * @return the tier that told, one of the TIER_ constants
+     */
+    public int getTier() {
+        this.compare();
+        return this.tier;
+    }
+
+    /**
+     * @return the values as "1" or "0" keyed by the variable names of both trees,
+     *         as taken by evaluate(Hashtable), where the expressions differ, or
+     *         null if they are equivalent
+     */
+    public Hashtable getDifference() {
+        this.compare();
+        return this.difference;
+    }
+
+    private void setResult(int tier, boolean[] values) {
+        // values holds the value of each variable of names where the trees differ
+        this.tier = tier;
+        this.equivalent = values == null;
+        if (values != null) {
+            this.difference = new Hashtable();
+            for (int i = 0; i < values.length; i++) {
+                this.difference.put(this.names.get(i), values[i] ? "1" : "0");
+            }
+        }
+    }
+
+    private boolean simulate() {
+        // True if an assignment was found where the trees differ
+        Random random = new Random(0x7572616361L); // The same assignments every time
+        long[] words = new long[this.names.size()];
+        for (int w = 0; w < this.simulation_words; w++) {
+            for (int i = 0; i < words.length; i++) {
+                words[i] = random.nextLong();
+            }
+            if (this.differs(TIER_SIMULATION, words, -1L))
+                return true;
+        }
+        return false;
+    }
+
+    private void compareRows() {
+        // The rows are numbered as in a truth table of the variables of names, in
+        // that order. Only the first 2^n bits of the words matter under 6 variables.
+        int varCount = this.names.size();
+        long[] words = new long[varCount];
+        long blockCount = varCount <= 6 ? 1 : 1L << (varCount - 6);
+        long mask = varCount < 6 ? (1L << (1 << varCount)) - 1 : -1L;
+
+        for (int i = 0; i < varCount && i < 6; i++) {
+            words[i] = TruthTable.COLUMN_PATTERNS[i];
+        }
+        for (long block = 0; block < blockCount; block++) {
+            for (int i = 6; i < varCount; i++) {
+                words[i] = -((block >>> (i - 6)) & 1); // Constant over the block
+            }
+            if (this.differs(TIER_EXHAUSTIVE, words, mask))
+                return;
+        }
+        this.setResult(TIER_EXHAUSTIVE, null);
+    }
+
+    private boolean differs(int tier, long[] words, long mask) {
+        // Evaluates both trees on 64 assignments, words holding the values of the
+        // variables of names. Sets the result if they differ on one of them.
+        for (int i = 0; i < this.slots.length; i++) {
+            this.tree_words[i] = words[this.slots[i]];
+        }
+        for (int i = 0; i < this.aSlots.length; i++) {
+            this.a_tree_words[i] = words[this.aSlots[i]];
+        }
+
+        long diff = this.tree.getProgram().evaluateWords(this.tree_words, this.stack)
+                ^ this.aTree.getProgram().evaluateWords(this.a_tree_words, this.stack);
+        diff &= mask;
+        if (diff == 0)
+            return false;
+
+        int bit = Bits.lowestBit(diff);
+        boolean[] values = new boolean[words.length];
+        for (int i = 0; i < words.length; i++) {
+            values[i] = ((words[i] >>> bit) & 1) != 0;
+        }
+        this.setResult(tier, values);
+        return true;
+    }
+
+    private void compareBDDs() {
+        BDD aBDD = new BDD();
+        try {
+            int f = this.tree.toBDD(aBDD, this.names);
+            aBDD.protect(f);
+            int g = this.aTree.toBDD(aBDD, this.names);
+            aBDD.protect(g);
+            this.setResult(TIER_BDD, aBDD.findPath(aBDD.xor(f, g), this.names.size()));
+        } catch (IllegalStateException e) {
+            // Over the node limit, some functions have no small BDD in any order
+            this.compareSAT();
+        } catch (StackOverflowError e) {
+            // Any other BDD that can't be built is left to the solver as well
+            this.compareSAT();
+        }
+    }
+
+    private void compareSAT() {
+        Hashtable values = this.tree.findDifference(this.aTree);
+        this.tier = TIER_SAT;
+        this.equivalent = values == null;
+        this.difference = values;
+    }
+}
@@ -1,7 +1,5 @@
 package bexpred;
 
-import java.util.Hashtable;
-
 /*
  * BExpred - Boolean Expression Reducer
  * Goal: To reduce specified boolean expressions
@@ -39,170 +37,58 @@ class BExprNode {
     //       For an AND operator, operator = 2
     //       If operator == -1, the node is either undefined, or of type variable
 
-    private String expression;
     private BExprNode left, right;
     private int node_type = -1;
     private int operator = -1;
     private String var_name = "";
+    private int var_index = -1; // The position of var_name in the sorted variable list of the tree
     private boolean inverted = false;
 
-    public BExprNode(String expression) {
-        this.left = null;
-        this.right = null;
-        this.inverted = false;
-        this.expression = expression.trim();
-        this.expression = BExprPreParser.getGroupedExpr(this.expression);
-        this.parse();
+    public BExprNode(String var_name) {
+        // Creates a variable node
+        this.node_type = 0;
+        this.var_name = var_name;
     }
 
-    private static String stripParentheses(String aStr) {
-        // Blindly strips leading and trailing parentheses
-        int start = 0, end = aStr.length();
-
-        for (int i = 0; i < aStr.length(); i++) {
-            if (aStr.charAt(i) != '(') {
-                start = i;
-                break;
-            }
-        }
-
-        for (int i = (aStr.length() - 1); i >= 0; i--) {
-            if (aStr.charAt(i) != ')') {
-                end = i + 1;
-                break;
-            }
-        }
-        return aStr.substring(start, end);
+    public BExprNode(int operator, BExprNode left, BExprNode right) {
+        // Creates an operator node
+        this.node_type = 1;
+        this.operator = operator;
+        this.left = left;
+        this.right = right;
     }
 
-    private void parse() {
-        String aVar;
-        boolean inverted;
-        if (this.expression.length() > 0) {
-            // Check if first char is a NOT
-            inverted = this.checkInverted();
-            aVar = this.parseVar();
-            if (this.expression.length() != 0) { // We are not at the bottom of the tree
-                this.node_type = 1;
-                // Set left node to the one just parsed
-                this.left = new BExprNode(aVar);
-                this.left.setInverted(inverted);
-                // Get the operator
-                this.operator = this.parseOp();
-                // Parse the RHS of the operator and set as right node
-                inverted = this.checkInverted();
-                aVar = this.parseVar();
-                this.right = new BExprNode(aVar);
-                this.right.setInverted(inverted);
-            } else {
-                this.node_type = 0;
-                this.var_name = aVar;
-                this.setInverted(this.isInverted() ^ inverted); // The XOR trick is necessary for sub-parses such as the !(!A) case
-            }
-
-            // The following deals with cases with extra (useless) parentheses
-            if (this.right == null && this.left == null && this.node_type == 0) {
-                if (BExprParser.hasOp(this.var_name) || BExprParser.hasNOT(this.var_name)) {
-                    // Must reparse the expression 'til we get by the useless parentheses
-                    this.expression = BExprPreParser.getGroupedExpr(this.var_name);
-                    this.parse();
-                } else {
-                    // Must ensure no extra parentheses surround the variable
-                    this.var_name = stripParentheses(this.var_name);
-                }
-            }
-
-        } else {
-            this.node_type = -1;
-            this.var_name = "";
-        }
+    private static Object grow(Object from, Object to, int length) {
+        System.arraycopy(from, 0, to, 0, length);
+        return to;
     }
 
-    private String parseVar() {
-        int balance, i;
-        char aChar;
-        String aVar = "";
-
-        if (this.expression.length() > 0) {
-            if (this.expression.startsWith("(")) {
-                balance = 1;
-                for (i = 1; i < this.expression.length(); i++) {
-                    aChar = this.expression.charAt(i);
-                    if (aChar == ')')
-                        balance--;
-
-                    if (balance == 0)
-                        break;
-
-                    if (aChar == '(')
-                        balance++;
-
-                    aVar += aChar;
-                }
-
-                if ((i + 1) >= this.expression.length())
-                    this.expression = "";
-                else
-                    this.expression = expression.substring(i + 1); // We must specify the character after the last one in aVar, and also must drop the closing bracket
-
-            } else {
-                for (i = 0; i < this.expression.length(); i++) {
-                    aChar = this.expression.charAt(i);
-                    if (!BExprParser.isVarChar(aChar))
-                        break;
-
-                    aVar += aChar;
-                }
-
-                if (i >= this.expression.length())
-                    this.expression = "";
-                else
-                    this.expression = expression.substring(i);
-            }
-        }
-
-        return aVar;
+    public int getNodeType() {
+        return this.node_type;
     }
 
-    private int parseOp() {
-        char aChar;
-        int toRet;
-        if (this.expression.length() > 0) {
-            aChar = this.expression.charAt(0);
-            toRet = BExprParser.getOp(aChar);
-            if (toRet == -1)
-                return -1;
-        } else {
-            return -1;
-        }
-
-        this.expression = this.expression.substring(1);
-        return toRet;
+    public int getOperator() {
+        return this.operator;
     }
 
-    public boolean evaluate(Hashtable values) {
-        // Note the use of an XOR as an inverter
-        boolean l, r;
-        if (this.node_type == -1)
-            return false;
-
-        if (this.node_type == 0)
-            return (values.get(this.var_name)).equals("1") ^ this.inverted;
+    public BExprNode getLeft() {
+        return this.left;
+    }
 
-        if (this.node_type == 1) {
-            l = this.left.evaluate(values);
-            r = this.right.evaluate(values);
-            if (this.operator == 0)
-                return (l || r) ^ this.inverted;
+    public BExprNode getRight() {
+        return this.right;
+    }
 
-            if (this.operator == 1)
-                return (l ^ r) ^ this.inverted;
+    public String getVarName() {
+        return this.var_name;
+    }
 
-            if (this.operator == 2)
-                return (l && r) ^ this.inverted;
-        }
+    public int getVarIndex() {
+        return this.var_index;
+    }
 
-        return false;
+    public void setVarIndex(int var_index) {
+        this.var_index = var_index;
     }
 
     public boolean isInverted() {
@@ -213,73 +99,144 @@ class BExprNode {
         this.inverted = inverted;
     }
 
-    private boolean checkInverted() {
-        boolean toRet = false;
-        while (this.expression.length() > 0 && BExprParser.isNOT(this.expression.charAt(0))) {
-            this.expression = this.expression.substring(1);
-            toRet ^= true;
+    /**
+     * Copies the nodes of the tree under this node
+     *
+     * @return the root of the copy
+     */
+    public BExprNode copy() {
+        // The nodes are visited twice, their children are copied after the first visit
+        // and the node itself after the second, when the copies of its children are on
+        // top of the copies stack
+        BExprNode[] nodes = new BExprNode[16], copies = new BExprNode[16];
+        boolean[] visited = new boolean[16];
+        int nodeCount = 0, copyCount = 0;
+        BExprNode aNode, aCopy;
+
+        nodes[nodeCount++] = this;
+        while (nodeCount > 0) {
+            aNode = nodes[--nodeCount];
+            if (aNode.node_type == 1 && !visited[nodeCount]) {
+                if (nodeCount + 3 > nodes.length) {
+                    nodes = (BExprNode[]) grow(nodes, new BExprNode[nodes.length * 2], nodeCount);
+                    visited = (boolean[]) grow(visited, new boolean[visited.length * 2], nodeCount);
+                }
+                nodes[nodeCount] = aNode;
+                visited[nodeCount++] = true;
+                nodes[nodeCount] = aNode.left;
+                visited[nodeCount++] = false;
+                nodes[nodeCount] = aNode.right;
+                visited[nodeCount++] = false;
+                continue;
+            }
+
+            if (aNode.node_type == 1) {
+                aCopy = new BExprNode(aNode.operator, copies[copyCount - 1], copies[copyCount - 2]);
+                copyCount -= 2;
+            } else {
+                aCopy = new BExprNode(aNode.var_name);
+                aCopy.node_type = aNode.node_type;
+                aCopy.var_index = aNode.var_index;
+            }
+            aCopy.inverted = aNode.inverted;
+
+            if (copyCount == copies.length)
+                copies = (BExprNode[]) grow(copies, new BExprNode[copies.length * 2], copyCount);
+            copies[copyCount++] = aCopy;
         }
-        return toRet;
+        return copies[0];
     }
 
     public void invert() throws Exception {
-        if (this.node_type == 0)
-            this.inverted = (!this.inverted);
-        else if (this.node_type == 1) {
-            if (this.operator == 0)
-                this.operator = 2;
-            else if (this.operator == 2)
-                this.operator = 0;
-            else
-                throw new Exception("Can only invert trees with ANDs and ORs exclusively");
+        // The order in which the nodes are inverted doesn't matter, so a plain stack
+        // of the nodes left to visit is enough
+        BExprNode[] nodes = new BExprNode[16];
+        int nodeCount = 0;
+        BExprNode aNode;
+
+        nodes[nodeCount++] = this;
+        while (nodeCount > 0) {
+            aNode = nodes[--nodeCount];
+            if (aNode.node_type == 0)
+                aNode.inverted = (!aNode.inverted);
+            else if (aNode.node_type == 1) {
+                if (aNode.operator == 0)
+                    aNode.operator = 2;
+                else if (aNode.operator == 2)
+                    aNode.operator = 0;
+                else
+                    throw new Exception("Can only invert trees with ANDs and ORs exclusively");
 
-            this.left.invert();
-            this.right.invert();
+                if (nodeCount + 2 > nodes.length)
+                    nodes = (BExprNode[]) grow(nodes, new BExprNode[nodes.length * 2], nodeCount);
+                nodes[nodeCount++] = aNode.left;
+                nodes[nodeCount++] = aNode.right;
+            }
         }
     }
 
     public String toString() {
-        String l, r;
+        // Children are only bracketed when their operator differs from their parent's,
+        // inverted operator nodes are always printed as !(...)
+        //
+        // The stack holds what's left to print: either nodes, or the Strings to put
+        // between and after them
+        StringBuffer aBuffer = new StringBuffer();
+        Object[] items = new Object[16];
+        boolean[] bracketed = new boolean[16];
+        int itemCount = 0;
+        Object anItem;
+        BExprNode aNode;
+        boolean inBrackets;
 
-        if (this.node_type == 0)
-            return (this.inverted ? "!" + this.var_name : this.var_name);
-        else if (this.node_type == 1) {
-            if (this.left.node_type == 0 || this.left.operator == this.operator)
-                l = this.left.toString();
-            else
-                l = "(" + this.left.toString() + ")";
+        if (this.node_type == -1)
+            return "";
+
+        items[itemCount] = this;
+        bracketed[itemCount++] = false;
+        while (itemCount > 0) {
+            anItem = items[--itemCount];
+            inBrackets = bracketed[itemCount];
+            if (anItem instanceof String) {
+                aBuffer.append((String) anItem);
+                continue;
+            }
 
-            if (this.right.node_type == 0 || this.right.operator == this.operator)
-                r = this.right.toString();
-            else
-                r = "(" + this.right.toString() + ")";
+            aNode = (BExprNode) anItem;
+            if (aNode.node_type == 0) {
+                if (aNode.inverted)
+                    aBuffer.append('!');
+                aBuffer.append(aNode.var_name);
+                continue;
+            }
+
+            if (itemCount + 4 > items.length) {
+                items = (Object[]) grow(items, new Object[items.length * 2], itemCount);
+                bracketed = (boolean[]) grow(bracketed, new boolean[bracketed.length * 2], itemCount);
+            }
 
-            if (this.operator == 0)
-                return l + " " + BExprParser.getStringOp(this.operator) + " " + r; // Pad the expression for readability
+            if (aNode.inverted) {
+                aBuffer.append("!(");
+                items[itemCount++] = ")";
+            } else if (inBrackets) {
+                aBuffer.append('(');
+                items[itemCount++] = ")";
+            }
+
+            items[itemCount] = aNode.right;
+            bracketed[itemCount++] = aNode.needsBrackets(aNode.right);
+            if (aNode.operator == 0)
+                items[itemCount++] = " " + BExprParser.getStringOp(aNode.operator) + " "; // Pad the expression for readability
             else
-                return l + BExprParser.getStringOp(this.operator) + r;
+                items[itemCount++] = BExprParser.getStringOp(aNode.operator);
+            items[itemCount] = aNode.left;
+            bracketed[itemCount++] = aNode.needsBrackets(aNode.left);
         }
-        return "";
-    /*
-    if (this.node_type == 0)
-      return this.var_name;
-    else if (this.node_type == 1) {
-      if (this.operator == 0) {
-        if (this.left.node_type == 0)
-          l = this.left.toString();
-        else if (this.left.operator == 2)
-          l = "(" + this.left.toString() + ")";
-        else
-          l = this.left.toString();
-      } else if (this.operator == 2) {
-        if (this.left.node_type == 0)
-          l = "(" + this.left.toString();
-        else if (this.left.operator == 2)
-          l = this.left.toString();
-        else
-          l = this.left.toString();
-      }
+
+        return aBuffer.toString();
     }
-    */
+
+    private boolean needsBrackets(BExprNode child) {
+        return child.node_type == 1 && !child.inverted && child.operator != this.operator;
     }
-}
\ No newline at end of file
+}
@@ -1,4 +1,9 @@
 package bexpred;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Hashtable;
+
 /*
  * BExpred - Boolean Expression Reducer
  * Goal: To reduce specified boolean expressions
@@ -25,52 +30,218 @@ package bexpred;
  */
 
 class BExprParser {
+    // Markers pushed on the operator stack for opening brackets, the inverted
+    // one is used when the bracket is preceded by a NOT, as in !(A+B)
+    private static final int OPEN = 3;
+    private static final int OPEN_INVERTED = 4;
+
+    private final BExprTokenizer tokenizer;
+    private final int offset; // Error positions are reported relative to the first char after the leading NOTs
+    private final boolean endsWithOp;
+    private final Hashtable varNames = new Hashtable(); // Key: upper case name, Value: the same name, shared by all nodes
+    private ArrayList vars = new ArrayList();
+
+    private BExprNode[] leaves = new BExprNode[16]; // The variable nodes, their slots are resolved once all names are known
+    private int leafCount = 0;
+
+    private BExprNode[] operands = new BExprNode[16];
+    private int operandCount = 0;
+    private int[] operators = new int[16];
+    private int operatorCount = 0;
+
+    public BExprParser(String expression) {
+        int i = 0;
+        while (i < expression.length() && expression.charAt(i) == ' ')
+            i++;
+        while (i < expression.length() && isNOT(expression.charAt(i)))
+            i++;
+
+        this.offset = i;
+
+        i = expression.length() - 1;
+        while (i >= 0 && expression.charAt(i) == ' ')
+            i--;
+        this.endsWithOp = i >= 0 && isOp(expression.charAt(i));
+
+        this.tokenizer = new BExprTokenizer(expression);
+    }
 
     /**
-     * Returns the next operator, where:
-     * 0 => OR
-     * 1 => XOR
-     * 2 => AND
-     * -1 => No operator
+     * Parses the expression into a tree in a single pass. ANDs have precedence over
+     * ORs and XORs, which are evaluated from left to right. An AND is assumed before
+     * an opening bracket and after a closing one, as in (A+B)(C+A).
      *
-     * @param startAt    where to start look for an operator from
-     * @param expression string to search for an operator in
-     * @return the type of the next operator
+     * @return the root of the expression tree
+     * @throws BExprPreParseException if the expression is invalid
      */
-    public static int nextOp(int startAt, String expression) {
-        // Returns the integer value of the next operator in the expression, -1 if a
-        // closing bracket is found or if we get to the end of the expression
-        char aChar;
-        int balance = 0; // The number of nesting-levels deep we are into brackets ()
-        for (int i = startAt; i < expression.length(); i++) {
-            aChar = expression.charAt(i);
-            if (isOR(aChar))
-                return 0;
-            if (isXOR(aChar))
-                return 1;
-            if (isAND(aChar))
-                return 2;
-            if (aChar == '(') {
-                balance++;
-                do {
-                    int start = expression.indexOf('(', i + 1);
-                    int end = expression.indexOf(')', i + 1);
-
-                    if (start < end && start != -1) {
-                        i = start;
-                        balance++;
-                    } else if (end != -1) { // ')' is before '(', and isn't nonexistent (-1)
-                        i = end;
-                        balance--;
-                    } else { // Neither type of bracket was found
-                        return -1;
-                    }
-                } while (balance > 0);
+    public BExprNode parse() throws BExprPreParseException {
+        boolean expectOperand = true; // False right after a variable or closing bracket
+        boolean inverted = false; // The parity of the NOTs preceding the next operand
+        int depth = 0, token, prevToken = BExprTokenizer.END;
+        BExprNode aNode;
+
+        token = this.tokenizer.next();
+        if (token == BExprTokenizer.END)
+            throw new BExprPreParseException("Empty expression");
+        if (token == BExprTokenizer.OP || this.endsWithOp)
+            throw new BExprPreParseException("Expression cannot start or end with an operator");
+
+        while (true) {
+            if (expectOperand) {
+                if (token == BExprTokenizer.NOT) {
+                    inverted ^= true;
+                } else if (token == BExprTokenizer.VAR) {
+                    aNode = new BExprNode(this.getVarName(this.tokenizer.getVarName()));
+                    aNode.setInverted(inverted);
+                    this.pushOperand(aNode);
+                    this.addLeaf(aNode);
+                    inverted = false;
+                    expectOperand = false;
+                } else if (token == BExprTokenizer.OPEN) {
+                    this.pushOperator(inverted ? OPEN_INVERTED : OPEN);
+                    inverted = false;
+                    depth++;
+                } else if (token == BExprTokenizer.OP) {
+                    if (prevToken == BExprTokenizer.OP)
+                        throw new BExprPreParseException("Two consecutive operators near character " + this.position());
+                    throw new BExprPreParseException("The expression is invalid near character " + this.position());
+                } else if (token == BExprTokenizer.CLOSE) {
+                    if (depth == 0)
+                        throw new BExprPreParseException("Unbalanced closing bracket at character " + this.position());
+                    throw new BExprPreParseException("The expression is invalid near character " + this.position());
+                } else { // END
+                    if (depth > 0)
+                        throw new BExprPreParseException("The expression is missing a closing bracket somewhere");
+                    if (this.operandCount == 0)
+                        throw new BExprPreParseException("Empty expression");
+                    throw new BExprPreParseException("The expression is invalid near character " + this.position());
+                }
+            } else {
+                if (token == BExprTokenizer.OP) {
+                    this.reduce(precedence(this.tokenizer.getOperator()));
+                    this.pushOperator(this.tokenizer.getOperator());
+                    expectOperand = true;
+                } else if (token == BExprTokenizer.OPEN || (prevToken == BExprTokenizer.CLOSE && (token == BExprTokenizer.VAR || token == BExprTokenizer.NOT))) {
+                    // Implicit AND, the token is handled again as an operand
+                    this.reduce(precedence(2));
+                    this.pushOperator(2);
+                    expectOperand = true;
+                    prevToken = BExprTokenizer.OP;
+                    continue;
+                } else if (token == BExprTokenizer.CLOSE) {
+                    if (depth == 0)
+                        throw new BExprPreParseException("Unbalanced closing bracket at character " + this.position());
+                    this.reduce(0);
+                    if (this.operators[--this.operatorCount] == OPEN_INVERTED)
+                        this.operands[this.operandCount - 1].setInverted(!this.operands[this.operandCount - 1].isInverted());
+                    depth--;
+                } else if (token == BExprTokenizer.END) {
+                    if (depth > 0)
+                        throw new BExprPreParseException("The expression is missing a closing bracket somewhere");
+                    this.reduce(0);
+                    this.resolveVars();
+                    return this.operands[0];
+                } else {
+                    // A variable or NOT right after a variable, such as A!B
+                    throw new BExprPreParseException("The expression is invalid near character " + this.position());
+                }
             }
-            if (aChar == ')')
-                return -1;
+
+            prevToken = token;
+            token = this.tokenizer.next();
         }
-        return -1;
+    }
+
+    /**
+     * @return the sorted list of unique variable names found by parse()
+     */
+    public ArrayList getVars() {
+        return this.vars;
+    }
+
+    private void resolveVars() {
+        // Sorts the variable names and gives every variable node the position of
+        // its name in that list, which is the slot it's evaluated from
+        Object[] a = this.vars.toArray();
+        Arrays.sort(a);
+        this.vars = new ArrayList(Arrays.asList(a));
+
+        Hashtable slots = new Hashtable(a.length);
+        for (int i = 0; i < a.length; i++)
+            slots.put(a[i], new Integer(i));
+
+        for (int i = 0; i < this.leafCount; i++)
+            this.leaves[i].setVarIndex(((Integer) slots.get(this.leaves[i].getVarName())).intValue());
+        this.leaves = null;
+    }
+
+    private String getVarName(String aVar) {
+        String upper = aVar.toUpperCase();
+        String name = (String) this.varNames.get(upper);
+        if (name == null) {
+            name = upper;
+            this.varNames.put(name, name);
+            this.vars.add(name);
+        }
+        return name;
+    }
+
+    private int position() {
+        return this.tokenizer.getStart() - this.offset;
+    }
+
+    private static int precedence(int anOp) {
+        // Operators of higher precedence are grouped first, brackets have the lowest
+        if (anOp == 2)
+            return 2;
+        if (anOp == 0 || anOp == 1)
+            return 1;
+        return 0;
+    }
+
+    private void reduce(int minPrecedence) {
+        // Combines the operands on the stack while the operators on top of it have
+        // at least the given precedence. Operators of equal precedence are grouped
+        // from left to right.
+        int anOp;
+        BExprNode left, right;
+        while (this.operatorCount > 0) {
+            anOp = this.operators[this.operatorCount - 1];
+            if (anOp == OPEN || anOp == OPEN_INVERTED || precedence(anOp) < minPrecedence)
+                break;
+
+            this.operatorCount--;
+            right = this.operands[--this.operandCount];
+            left = this.operands[--this.operandCount];
+            this.pushOperand(new BExprNode(anOp, left, right));
+        }
+    }
+
+    private void pushOperand(BExprNode aNode) {
+        if (this.operandCount == this.operands.length) {
+            BExprNode[] grown = new BExprNode[this.operands.length * 2];
+            System.arraycopy(this.operands, 0, grown, 0, this.operandCount);
+            this.operands = grown;
+        }
+        this.operands[this.operandCount++] = aNode;
+    }
+
+    private void addLeaf(BExprNode aNode) {
+        if (this.leafCount == this.leaves.length) {
+            BExprNode[] grown = new BExprNode[this.leaves.length * 2];
+            System.arraycopy(this.leaves, 0, grown, 0, this.leafCount);
+            this.leaves = grown;
+        }
+        this.leaves[this.leafCount++] = aNode;
+    }
+
+    private void pushOperator(int anOp) {
+        if (this.operatorCount == this.operators.length) {
+            int[] grown = new int[this.operators.length * 2];
+            System.arraycopy(this.operators, 0, grown, 0, this.operatorCount);
+            this.operators = grown;
+        }
+        this.operators[this.operatorCount++] = anOp;
     }
 
     public static int getOp(char aChar) {
@@ -92,14 +263,6 @@ class BExprParser {
         return (isAND(aChar) || isOR(aChar) || isXOR(aChar));
     }
 
-    public static boolean hasOp(String aStr) {
-        for (int i = 0; i < aStr.length(); i++) {
-            if (isOp(aStr.charAt(i)))
-                return true;
-        }
-        return false;
-    }
-
     private static boolean isAND(char aChar) {
         return aChar == '*' || aChar == '&';
     }
@@ -116,14 +279,6 @@ class BExprParser {
         return aChar == '!' || aChar == '~';
     }
 
-    public static boolean hasNOT(String aStr) {
-        for (int i = 0; i < aStr.length(); i++) {
-            if (isNOT(aStr.charAt(i)))
-                return true;
-        }
-        return false;
-    }
-
 
     public static boolean isVarChar(char aChar) {
         return (!isOp(aChar) && !isNOT(aChar) && aChar != ' ' && aChar != '(' && aChar != ')');
@@ -0,0 +1,369 @@
+package bexpred;
+
+/*
+ * BExpred - Boolean Expression Reducer
+ * Goal: To reduce specified boolean expressions
+ * Current state: Evaluates a given expression with input values
+ * Copyright (c) 2003 Benjamin Biron
+ * License: GPL
+
+    This file is part of BExpred.
+
+    BExpred is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    BExpred is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with BExpred; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+ */
+
+class BExprProgram {
+    // An expression tree lowered to postfix form. Every instruction is a single int:
+    //       Bits 0-1 hold the opcode, the operators use the same values as in BExprNode
+    //       Bit 2 is set if the result of the instruction is inverted
+    //       For VAR instructions, the remaining bits hold the variable slot
+    //
+    // The operators are all commutative, so the child needing the deeper stack is
+    // always compiled first. The stack then never gets deeper than log2 of the
+    // number of variable nodes plus one, and fits in the bits of a single long.
+    static final int OR = 0;
+    static final int XOR = 1;
+    static final int AND = 2;
+    static final int VAR = 3;
+    private static final int INVERTED = 4;
+    private static final int SLOT_SHIFT = 3;
+
+    private final int[] code;
+    private final int var_count;
+    private final int max_depth;
+
+    public BExprProgram(BExprNode root, int varCount) {
+        BExprNode[] nodes = new BExprNode[16]; // The nodes in pre-order, so children always come after their parent
+        int[] left = new int[16];
+        int[] right = new int[16];
+        int nodeCount = 0;
+        int[] stack = new int[16];
+        int stackSize = 0, i, parent;
+        BExprNode aNode;
+
+        this.var_count = varCount;
+
+        // Number the nodes in pre-order
+        nodes[nodeCount++] = root;
+        stack[stackSize++] = 0;
+        while (stackSize > 0) {
+            parent = stack[--stackSize];
+            aNode = nodes[parent];
+            if (aNode.getNodeType() != 1)
+                continue;
+
+            if (nodeCount + 2 > nodes.length) {
+                nodes = (BExprNode[]) grow(nodes, new BExprNode[nodes.length * 2], nodeCount);
+                left = (int[]) grow(left, new int[left.length * 2], nodeCount);
+                right = (int[]) grow(right, new int[right.length * 2], nodeCount);
+            }
+            if (stackSize + 2 > stack.length)
+                stack = (int[]) grow(stack, new int[stack.length * 2], stackSize);
+
+            left[parent] = nodeCount;
+            nodes[nodeCount] = aNode.getLeft();
+            stack[stackSize++] = nodeCount++;
+            right[parent] = nodeCount;
+            nodes[nodeCount] = aNode.getRight();
+            stack[stackSize++] = nodeCount++;
+        }
+
+        // The stack depth needed by every subtree, computed children first
+        int[] depth = new int[nodeCount];
+        int l, r;
+        for (i = nodeCount - 1; i >= 0; i--) {
+            if (nodes[i].getNodeType() != 1) {
+                depth[i] = 1;
+            } else {
+                l = depth[left[i]];
+                r = depth[right[i]];
+                depth[i] = l == r ? l + 1 : Math.max(l, r);
+            }
+        }
+        this.max_depth = depth[0];
+        if (this.max_depth > 64)
+            throw new IllegalStateException("Expression too deep to compile");
+
+        // Emit the instructions in post-order, deepest child first. Negative entries
+        // on the stack are nodes whose children have already been emitted.
+        this.code = new int[nodeCount];
+        int pc = 0;
+        stackSize = 0;
+        stack[stackSize++] = 0;
+        while (stackSize > 0) {
+            i = stack[--stackSize];
+            if (i < 0) {
+                aNode = nodes[~i];
+                this.code[pc++] = aNode.getOperator() | (aNode.isInverted() ? INVERTED : 0);
+            } else if (nodes[i].getNodeType() != 1) {
+                aNode = nodes[i];
+                this.code[pc++] = VAR | (aNode.isInverted() ? INVERTED : 0) | (aNode.getVarIndex() << SLOT_SHIFT);
+            } else {
+                if (stackSize + 3 > stack.length)
+                    stack = (int[]) grow(stack, new int[stack.length * 2], stackSize);
+                stack[stackSize++] = ~i;
+                if (depth[left[i]] >= depth[right[i]]) {
+                    stack[stackSize++] = right[i];
+                    stack[stackSize++] = left[i];
+                } else {
+                    stack[stackSize++] = left[i];
+                    stack[stackSize++] = right[i];
+                }
+            }
+        }
+    }
+
+    private static Object grow(Object from, Object to, int length) {
+        System.arraycopy(from, 0, to, 0, length);
+        return to;
+    }
+
+    public int getVarCount() {
+        return this.var_count;
+    }
+
+    public int getMaxDepth() {
+        return this.max_depth;
+    }
+
+    /**
+     * Evaluates the expression without allocating anything.
+     *
+     * @param assignmentBits bit i holds the value of the variable in slot i, as in the rows of a TruthTable
+     * @return the value of the expression
+     */
+    public boolean evaluate(long assignmentBits) {
+        if (this.var_count > 64)
+            throw new IllegalArgumentException("Only expressions of up to 64 variables can be evaluated from a long");
+
+        long stack = 0; // Bit 0 is the top of the stack
+        int instr;
+        for (int i = 0; i < this.code.length; i++) {
+            instr = this.code[i];
+            switch (instr & 3) {
+                case VAR:
+                    stack = (stack << 1) | ((assignmentBits >>> (instr >>> SLOT_SHIFT)) & 1);
+                    break;
+                case OR:
+                    stack = (stack >>> 1) | (stack & 1);
+                    break;
+                case XOR:
+                    stack = (stack >>> 1) ^ (stack & 1);
+                    break;
+                default: // AND
+                    stack = (stack >>> 1) & (stack | ~1L);
+                    break;
+            }
+            if ((instr & INVERTED) != 0)
+                stack ^= 1;
+        }
+        return (stack & 1) != 0;
+    }
+
+    /**
+     * Evaluates the expression without allocating anything.
+     *
+     * @param values the value of the variable in each slot
+     * @return the value of the expression
+     */
+    public boolean evaluate(boolean[] values) {
+        long stack = 0; // Bit 0 is the top of the stack
+        int instr;
+        for (int i = 0; i < this.code.length; i++) {
+            instr = this.code[i];
+            switch (instr & 3) {
+                case VAR:
+                    stack = (stack << 1) | (values[instr >>> SLOT_SHIFT] ? 1 : 0);
+                    break;
+                case OR:
+                    stack = (stack >>> 1) | (stack & 1);
+                    break;
+                case XOR:
+                    stack = (stack >>> 1) ^ (stack & 1);
+                    break;
+                default: // AND
+                    stack = (stack >>> 1) & (stack | ~1L);
+                    break;
+            }
+            if ((instr & INVERTED) != 0)
+                stack ^= 1;
+        }
+        return (stack & 1) != 0;
+    }
+
+    /**
+     * Evaluates the expression for 64 assignments at once.
+     *
+     * @param words the values of the variable in each slot, bit i of a word being
+     *              its value in assignment i
+     * @param stack scratch space of at least getMaxDepth() longs
+     * @return the outputs, bit i being the output for assignment i
+     */
+    public long evaluateWords(long[] words, long[] stack) {
+        int top = -1, instr;
+        for (int i = 0; i < this.code.length; i++) {
+            instr = this.code[i];
+            switch (instr & 3) {
+                case VAR:
+                    stack[++top] = words[instr >>> SLOT_SHIFT];
+                    break;
+                case OR:
+                    top--;
+                    stack[top] |= stack[top + 1];
+                    break;
+                case XOR:
+                    top--;
+                    stack[top] ^= stack[top + 1];
+                    break;
+                default: // AND
+                    top--;
+                    stack[top] &= stack[top + 1];
+                    break;
+            }
+            if ((instr & INVERTED) != 0)
+                stack[top] = ~stack[top];
+        }
+        return stack[0];
+    }
+
+    /**
+     * Evaluates the expression for 64 consecutive rows of its truth table at once,
+     * every variable being replaced by the 64 bit pattern of its column.
+     *
+     * @param firstRow the index of the first row, a multiple of 64
+     * @param stack    scratch space of at least getMaxDepth() longs
+     * @return the outputs of the rows, the output of firstRow + i being bit i
+     */
+    public long evaluateBlock(long firstRow, long[] stack) {
+        if (this.var_count > 64)
+            throw new IllegalArgumentException("Only expressions of up to 64 variables have indexed rows");
+
+        int top = -1, instr, slot;
+        for (int i = 0; i < this.code.length; i++) {
+            instr = this.code[i];
+            switch (instr & 3) {
+                case VAR:
+                    slot = instr >>> SLOT_SHIFT;
+                    if (slot < 6)
+                        stack[++top] = TruthTable.COLUMN_PATTERNS[slot];
+                    else
+                        stack[++top] = -((firstRow >>> slot) & 1); // The variable is constant over the block
+                    break;
+                case OR:
+                    top--;
+                    stack[top] |= stack[top + 1];
+                    break;
+                case XOR:
+                    top--;
+                    stack[top] ^= stack[top + 1];
+                    break;
+                default: // AND
+                    top--;
+                    stack[top] &= stack[top + 1];
+                    break;
+            }
+            if ((instr & INVERTED) != 0)
+                stack[top] = ~stack[top];
+        }
+        return stack[0];
+    }
+
+    /**
+     * Builds the function of the expression in a BDD.
+     *
+     * @param aBDD   the BDD to build it in
+     * @param levels the level of the variable in each slot
+     * @return the node of the function, which isn't protected
+     */
+    public int toBDD(BDD aBDD, int[] levels) {
+        // The stack of the evaluation is the stack of intermediate results of the BDD,
+        // so none of them is collected while the others are built
+        int instr, result = BDD.FALSE;
+        for (int i = 0; i < this.code.length; i++) {
+            instr = this.code[i];
+            if ((instr & 3) == VAR) {
+                result = aBDD.var(levels[instr >>> SLOT_SHIFT]);
+            } else {
+                result = aBDD.peek(1);
+                switch (instr & 3) {
+                    case OR:
+                        result = aBDD.or(result, aBDD.peek(0));
+                        break;
+                    case XOR:
+                        result = aBDD.xor(result, aBDD.peek(0));
+                        break;
+                    default: // AND
+                        result = aBDD.and(result, aBDD.peek(0));
+                        break;
+                }
+                aBDD.pop(2);
+            }
+            if ((instr & INVERTED) != 0) {
+                aBDD.push(result);
+                result = aBDD.not(result);
+                aBDD.pop(1);
+            }
+            aBDD.push(result);
+        }
+        aBDD.pop(1);
+        return result;
+    }
+
+    /**
+     * Adds the clauses defining the expression to a SAT solver, with one new
+     * variable for the output of every operator (Tseitin encoding).
+     *
+     * @param solver the solver to add the clauses to
+     * @param vars   the solver variable of the variable in each slot
+     * @return the literal of the output of the expression
+     */
+    public int toCNF(SATSolver solver, int[] vars) {
+        int[] stack = new int[this.max_depth];
+        int top = -1, instr, a, b, t;
+        for (int i = 0; i < this.code.length; i++) {
+            instr = this.code[i];
+            if ((instr & 3) == VAR) {
+                stack[++top] = vars[instr >>> SLOT_SHIFT];
+            } else {
+                b = stack[top--];
+                a = stack[top];
+                t = solver.newVar();
+                switch (instr & 3) {
+                    case OR:
+                        solver.addClause(new int[]{t, -a});
+                        solver.addClause(new int[]{t, -b});
+                        solver.addClause(new int[]{-t, a, b});
+                        break;
+                    case XOR:
+                        solver.addClause(new int[]{-t, a, b});
+                        solver.addClause(new int[]{-t, -a, -b});
+                        solver.addClause(new int[]{t, -a, b});
+                        solver.addClause(new int[]{t, a, -b});
+                        break;
+                    default: // AND
+                        solver.addClause(new int[]{-t, a});
+                        solver.addClause(new int[]{-t, b});
+                        solver.addClause(new int[]{t, -a, -b});
+                        break;
+                }
+                stack[top] = t;
+            }
+            if ((instr & INVERTED) != 0)
+                stack[top] = -stack[top];
+        }
+        return stack[0];
+    }
+}
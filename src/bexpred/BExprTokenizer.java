@@ -0,0 +1,133 @@
+package bexpred;
+
+/*
+ * BExpred - Boolean Expression Reducer
+ * Goal: To reduce specified boolean expressions
+ * Current state: Evaluates a given expression with input values
+ * Copyright (c) 2003 Benjamin Biron
+ * License: GPL
+
+    This file is part of BExpred.
+
+    BExpred is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    BExpred is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with BExpred; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+ */
+
+class BExprTokenizer {
+    // Token types returned by next()
+    static final int END = 0;
+    static final int VAR = 1;
+    static final int OP = 2;
+    static final int NOT = 3;
+    static final int OPEN = 4;
+    static final int CLOSE = 5;
+
+    private final String expression;
+    private final int length;
+    private int pos = 0; // The position of the next unread character
+
+    private int start = 0; // Where the current token starts in the expression
+    private int operator = -1; // The operator of the current OP token, as defined in BExprParser.getOp()
+    private String var_name = null; // The name of the current VAR token
+
+    public BExprTokenizer(String expression) {
+        this.expression = expression;
+        this.length = expression.length();
+    }
+
+    /**
+     * Reads the next token. The expression is only ever read once, from left to right.
+     *
+     * @return the type of the token that was read
+     */
+    public int next() {
+        char aChar;
+
+        while (this.pos < this.length && this.expression.charAt(this.pos) == ' ')
+            this.pos++;
+
+        this.start = this.pos;
+        if (this.pos >= this.length)
+            return END;
+
+        aChar = this.expression.charAt(this.pos);
+        if (BExprParser.isOp(aChar)) {
+            this.operator = BExprParser.getOp(aChar);
+            this.pos++;
+            return OP;
+        }
+
+        if (BExprParser.isNOT(aChar)) {
+            this.pos++;
+            return NOT;
+        }
+
+        if (aChar == '(') {
+            this.pos++;
+            return OPEN;
+        }
+
+        if (aChar == ')') {
+            this.pos++;
+            return CLOSE;
+        }
+
+        this.var_name = this.readVar();
+        return VAR;
+    }
+
+    private String readVar() {
+        // Spaces between variable chars are dropped, so "A B" is the variable AB
+        int segmentStart = this.pos, end;
+        StringBuffer joined = null;
+
+        while (true) {
+            while (this.pos < this.length && BExprParser.isVarChar(this.expression.charAt(this.pos)))
+                this.pos++;
+
+            end = this.pos;
+            while (this.pos < this.length && this.expression.charAt(this.pos) == ' ')
+                this.pos++;
+
+            if (this.pos >= this.length || !BExprParser.isVarChar(this.expression.charAt(this.pos)))
+                break;
+
+            if (joined == null)
+                joined = new StringBuffer();
+            for (int i = segmentStart; i < end; i++)
+                joined.append(this.expression.charAt(i));
+            segmentStart = this.pos;
+        }
+
+        if (joined == null)
+            return this.expression.substring(segmentStart, end);
+
+        for (int i = segmentStart; i < end; i++)
+            joined.append(this.expression.charAt(i));
+        return joined.toString();
+    }
+
+    public int getStart() {
+        return this.start;
+    }
+
+    public int getOperator() {
+        return this.operator;
+    }
+
+    public String getVarName() {
+        return this.var_name;
+    }
+}
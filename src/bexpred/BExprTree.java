@@ -1,7 +1,6 @@
 package bexpred;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Hashtable;
 
 /*
@@ -34,27 +33,62 @@ class BExprTree {
     private int var_count; // The amount of unique variables
     private ArrayList vars; // The list of variables, strings.
     private BExprNode root; // The root node.
-    private TruthTable truth_table;
+    private BExprProgram program; // The tree compiled for evaluation
+    private TruthTable truth_table; // Built on the first call to getTruthTable()
 
     public BExprTree(String expression) throws BExprPreParseException {
         this.setExpression(expression);
     }
 
-    public TruthTable getTruthTable() {
+    public BExprProgram getProgram() {
+        return this.program;
+    }
+
+    /**
+     * Returns the truth table of the expression, which is only built the first
+     * time it's needed since it has 2^n rows.
+     *
+     * @return the truth table of the expression
+     */
+    public synchronized TruthTable getTruthTable() {
+        if (this.truth_table == null)
+            this.truth_table = new TruthTable(this);
         return this.truth_table;
     }
 
+    /**
+     * Releases the truth table built by getTruthTable(), with its file if it isn't
+     * kept on the heap. It's built again if it's needed afterwards, so this should be
+     * called once the tree is replaced by another one.
+     */
+    public synchronized void close() {
+        if (this.truth_table != null) {
+            this.truth_table.close();
+            this.truth_table = null;
+        }
+    }
+
     private void setExpression(String expression) throws BExprPreParseException {
-        BExprPreParser preParser;
+        // The parsed form is shared with the other trees of the same expression, and
+        // only parsed if it isn't in BExprCache. Expressions that fail aren't cached, so
+        // their error is found again with the positions of the text as typed.
+        BExprParser parser;
+        ParsedExpr parsed;
+        String key = BExprCache.normalize(expression);
         this.expression = expression.trim();
 
         try {
-            preParser = new BExprPreParser(this.expression);
-            this.expression = preParser.getExpression();
-            this.var_count = this.updateVars();
-            this.root = new BExprNode(this.expression);
-            this.root.setInverted(preParser.isInverted() || this.root.isInverted());
-            this.truth_table = new TruthTable(this);
+            parsed = BExprCache.get(key);
+            if (parsed == null) {
+                parser = new BExprParser(this.expression);
+                BExprNode aRoot = parser.parse();
+                parsed = new ParsedExpr(key, aRoot, parser.getVars(), new BExprProgram(aRoot, parser.getVars().size()));
+                BExprCache.put(parsed);
+            }
+            this.root = parsed.root;
+            this.vars = new ArrayList(parsed.vars);
+            this.var_count = this.vars.size();
+            this.program = parsed.program;
         } catch (BExprPreParseException e) {
             e.printStackTrace();
             this.vars = new ArrayList();
@@ -72,77 +106,151 @@ class BExprTree {
         return this.var_count;
     }
 
-    private int updateVars() {
-        // This method simply sets the vars List and returns the amount of unique
-        // variables taking into account case if desired.
-        //
-        // These are almost all state variables
-        char aChar;
-        String aVar = "";
-        ArrayList boolVars = new ArrayList();
-        boolean inVar = false;
-        boolean isVar;
-        boolean varExists = false;
-        this.expression = this.expression.toUpperCase();
-
-        this.expression += " "; // Pad the expression to catch the last "value"
-        for (int i = 0; i < this.expression.length(); i++) {
-            aChar = this.expression.charAt(i);
-            isVar = BExprParser.isVarChar(aChar);
-            if (!inVar && isVar) {
-                inVar = true;
-                aVar += aChar;
-            } else if (inVar) {
-                if (!isVar) {
-                    inVar = false;
-                    for (int s = 0; s < boolVars.size(); s++) {
-                        if (aVar.compareTo((String) boolVars.get(s)) == 0)
-                            varExists = true;
-                    }
-
-                    if (!varExists)
-                        boolVars.add(aVar);
-                    else
-                        varExists = false;
-
-                    aVar = "";
-                } else {
-                    aVar += aChar;
-                }
-            }
+    public boolean evaluate(Hashtable values) {
+        // Any value other than "1" is taken as false
+        boolean values_arr[] = new boolean[this.var_count];
+
+        for (int i = 0; i < this.var_count; i++) {
+            values_arr[i] = "1".equals(values.get(this.vars.get(i)));
         }
+        return this.evaluate(values_arr);
+    }
 
-        Object[] a;
-        a = boolVars.toArray();
-        Arrays.sort(a);
-        this.vars = new ArrayList(Arrays.asList(a));
-        return this.vars.size();
+    public boolean evaluate(boolean values[]) {
+        // The values are in the order of getVars()
+        return this.program.evaluate(values);
     }
 
-    public boolean evaluate(Hashtable values) {
-        // This is the evaluate method that should be called (should work with calling it on root directly, but that may change)
-        return this.root.evaluate(values);
+    public boolean compareTo(BExprTree aTree) {
+        // Returns true if the aTree expression is equivalent to this tree
+        // Variables the outputs don't depend on are left out, the others must have the
+        // same names in both trees. See BExprComparator for how it's decided.
+        return new BExprComparator(this, aTree).compare();
     }
 
-    public boolean evaluate(boolean values[]) {
-        Hashtable h_values = new Hashtable(this.var_count);
+    /**
+     * Builds the function of the expression in a BDD.
+     *
+     * @param aBDD  the BDD to build it in
+     * @param order the names of the variables, from the one tested first
+     * @return the node of the function, which isn't protected
+     */
+    public int toBDD(BDD aBDD, ArrayList order) {
+        int[] levels = new int[this.var_count];
+        for (int i = 0; i < this.var_count; i++) {
+            levels[i] = order.indexOf(this.vars.get(i));
+        }
+        return this.program.toBDD(aBDD, levels);
+    }
 
+    /**
+     * Orders the variables for a BDD. Variables close together in the expression
+     * usually interact, so they are kept close together by taking them as they
+     * first appear from left to right.
+     *
+     * @return the names of the variables, from the one to test first
+     */
+    public ArrayList getVarOrder() {
+        ArrayList order = new ArrayList();
+        BExprNode[] nodes = new BExprNode[16];
+        int nodeCount = 0;
+        BExprNode aNode;
+
+        nodes[nodeCount++] = this.root;
+        while (nodeCount > 0 && order.size() < this.var_count) {
+            aNode = nodes[--nodeCount];
+            if (aNode.getNodeType() == 0) {
+                if (!order.contains(aNode.getVarName()))
+                    order.add(aNode.getVarName());
+            } else if (aNode.getNodeType() == 1) {
+                if (nodeCount + 2 > nodes.length) {
+                    BExprNode[] grown = new BExprNode[nodes.length * 2];
+                    System.arraycopy(nodes, 0, grown, 0, nodeCount);
+                    nodes = grown;
+                }
+                nodes[nodeCount++] = aNode.getRight();
+                nodes[nodeCount++] = aNode.getLeft();
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Adds the clauses defining the expression to a SAT solver.
+     *
+     * @param solver the solver to add the clauses to, variable i + 1 of which is
+     *               the variable at position i of order
+     * @param order  the names of the variables
+     * @return the literal of the output of the expression
+     */
+    public int toCNF(SATSolver solver, ArrayList order) {
+        int[] satVars = new int[this.var_count];
         for (int i = 0; i < this.var_count; i++) {
-            h_values.put((String) this.vars.get(i), values[i] ? "1" : "0");
+            satVars[i] = order.indexOf(this.vars.get(i)) + 1;
         }
-        return this.evaluate(h_values);
+        return this.program.toCNF(solver, satVars);
     }
 
-    public boolean compareTo(BExprTree aTree) {
-        // Returns true if the aTree expression is equivalent to this tree
-        // It just uses truth tables to determine this
-        if (this.getVarCount() == aTree.getVarCount())
-            return this.getVars().equals(aTree.getVars()) && this.getTruthTable().equals(aTree.getTruthTable());
+    /**
+     * Looks for values of the variables making the expression true
+     *
+     * @return the values as "1" or "0" keyed by the variable names, as taken by
+     *         evaluate(Hashtable), or null if the expression is always false
+     */
+    public Hashtable findSatisfyingAssignment() {
+        SATSolver solver = new SATSolver();
+        for (int i = 0; i < this.var_count; i++) {
+            solver.newVar();
+        }
+        solver.addClause(new int[]{this.toCNF(solver, this.vars)});
+        return getAssignment(solver, this.vars);
+    }
 
-        this.getTruthTable().reduceVars();
-        aTree.getTruthTable().reduceVars();
+    /**
+     * Looks for values of the variables where the aTree expression and this one
+     * differ. Both are encoded in a single SAT problem that is only satisfiable if
+     * their outputs differ (a miter).
+     *
+     * @return the values as "1" or "0" keyed by the variable names of both trees,
+     *         or null if the expressions are equivalent
+     */
+    public Hashtable findDifference(BExprTree aTree) {
+        ArrayList names = new ArrayList(this.vars);
+        for (int i = 0; i < aTree.getVarCount(); i++) {
+            if (!names.contains(aTree.getVars().get(i)))
+                names.add(aTree.getVars().get(i));
+        }
 
-        return this.getTruthTable().equals(aTree.getTruthTable());
+        SATSolver solver = new SATSolver();
+        for (int i = 0; i < names.size(); i++) {
+            solver.newVar();
+        }
+        int f = this.toCNF(solver, names), g = aTree.toCNF(solver, names);
+        solver.addClause(new int[]{f, g});
+        solver.addClause(new int[]{-f, -g});
+        return getAssignment(solver, names);
+    }
+
+    /**
+     * Looks for a renaming of the variables of this expression giving the aTree
+     * one, see PermutationMatcher
+     *
+     * @return the name in aTree of each variable of this tree the output depends
+     *         on, or null if there's no such renaming
+     * @throws IllegalArgumentException if the output depends on too many variables
+     */
+    public Hashtable findVarMapping(BExprTree aTree) {
+        return new PermutationMatcher(this, aTree).findMapping();
+    }
+
+    private static Hashtable getAssignment(SATSolver solver, ArrayList names) {
+        if (solver.solve() != SATSolver.SAT)
+            return null;
+        Hashtable values = new Hashtable();
+        for (int i = 0; i < names.size(); i++) {
+            values.put(names.get(i), solver.getValue(i + 1) ? "1" : "0");
+        }
+        return values;
     }
 
     /**
@@ -152,8 +260,13 @@ class BExprTree {
      *
      * @throws Exception
      */
-    public void invert() throws Exception {
-        this.root.invert();
+    public synchronized void invert() throws Exception {
+        // The nodes may be shared with other trees through BExprCache, so they are copied
+        BExprNode inverted = this.root.copy();
+        inverted.invert();
+        this.root = inverted;
+        this.program = new BExprProgram(this.root, this.var_count);
+        this.close(); // The table of the expression before it was inverted
     }
 
     public String toString() {
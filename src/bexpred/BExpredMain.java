@@ -7,7 +7,6 @@ import javax.swing.text.BadLocationException;
 import java.awt.*;
 import java.awt.event.*;
 import java.util.ArrayList;
-import java.util.Hashtable;
 
 /*
  * BExpred - Boolean Expression Reducer
@@ -48,6 +47,7 @@ class BExpredMain extends JFrame {
 
 
     private boolean needs_refresh = false;
+    private boolean tt_needs_update = false; // The truth table is only built when it's shown
     private boolean showPlaceholder = true;
     private final JMenuBar jMenuBar1 = new JMenuBar();
     private final JMenu jMenu1 = new JMenu();
@@ -198,6 +198,10 @@ class BExpredMain extends JFrame {
 
         this.needs_refresh = false;
 
+        // Release the truth table of the last tree, it may be in a file
+        if (this.bexprtree != null)
+            this.bexprtree.close();
+
         // Create the expression tree from the expression.
         try {
             this.bexprtree = new BExprTree(this.ExprField.getText());
@@ -208,10 +212,6 @@ class BExpredMain extends JFrame {
             this.bexprtree = null;
             this.exceptionField.setText(ex.getMessage());
             ex.printStackTrace();
-        } catch (StackOverflowError ex) {
-            this.bexprtree = null;
-            this.exceptionField.setText("Stack Overflow: Expression too long");
-            ex.printStackTrace();
         }
 
         // Must clear the panel of the labels and input fields
@@ -253,7 +253,10 @@ class BExpredMain extends JFrame {
             this.jPanel2.setPreferredSize(new Dimension(colPos + maxColWidth, this.jPanel2.getHeight()));
             this.jPanel2.updateUI();
 
-            this.updateTT(this.bexprtree.getTruthTable());
+            if (this.ttFrame.isVisible())
+                this.updateTT(this.bexprtree.getTruthTable());
+            else
+                this.tt_needs_update = true;
         }
     }
 
@@ -296,13 +299,11 @@ class BExpredMain extends JFrame {
     }
 
     void EvaluateBtn_actionPerformed() {
-        Hashtable values = new Hashtable();
-        ArrayList vars = this.bexprtree.getVars();
+        // The checkboxes are in the same order as the variables of the tree
+        boolean[] values = new boolean[var_inputs.size()];
 
-        // Evaluate the expression by passing a HashTable of VAR:VALUE, if VALUE is
-        // anything other than !, it will be taken as false.
         for (int i = 0; i < var_inputs.size(); i++) {
-            values.put((String) vars.get(i), ((JCheckBox) var_inputs.get(i)).isSelected() ? "1" : "0");
+            values[i] = ((JCheckBox) var_inputs.get(i)).isSelected();
         }
         this.valueField.setText(bexprtree.evaluate(values) ? "True" : "False");
     }
@@ -318,6 +319,10 @@ class BExpredMain extends JFrame {
     void TTBtn_actionPerformed() {
         //Bah, just pops up what's going to be the truth table
         if (this.bexprtree != null) {
+            if (this.tt_needs_update) {
+                this.updateTT(this.bexprtree.getTruthTable());
+                this.tt_needs_update = false;
+            }
             this.ttFrame.setVisible(true);
         } else {
             // Should be a dialog
@@ -377,7 +382,7 @@ class BExpredMain extends JFrame {
     void jCheckBoxMenuItem1_mouseReleased() {
         if (jCheckBoxMenuItem1.getState()) {
             if (this.bexprtree != null)
-                this.ttFrame.setVisible(true);
+                this.TTBtn_actionPerformed();
             else
                 System.out.println("There are no expressions to display in the truth table");
         } else {
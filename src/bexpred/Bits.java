@@ -0,0 +1,89 @@
+package bexpred;
+
+/*
+ * BExpred - Boolean Expression Reducer
+ * Goal: To reduce specified boolean expressions
+ * Current state: Evaluates a given expression with input values
+ * Copyright (c) 2003 Benjamin Biron
+ * License: GPL
+
+    This file is part of BExpred.
+
+    BExpred is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    BExpred is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with BExpred; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+ */
+
+class Bits {
+    // Bit counting helpers for the truth tables and implicants, which hold their
+    // rows and terms in longs
+
+    private Bits() {
+    }
+
+    /**
+     * @param x the bits to count
+     * @return the number of bits set in x
+     */
+    static int bitCount(long x) {
+        x = x - ((x >>> 1) & 0x5555555555555555L);
+        x = (x & 0x3333333333333333L) + ((x >>> 2) & 0x3333333333333333L);
+        x = (x + (x >>> 4)) & 0x0F0F0F0F0F0F0F0FL;
+        return (int) ((x * 0x0101010101010101L) >>> 56);
+    }
+
+    /**
+     * @param x the bits, not 0
+     * @return the index of the lowest bit set in x
+     */
+    static int lowestBit(long x) {
+        return bitCount((x & -x) - 1);
+    }
+
+    /**
+     * @param bitCount the number of bits
+     * @return the number of longs needed to hold them
+     */
+    static int wordCount(int bitCount) {
+        return (bitCount + 63) >>> 6;
+    }
+
+    /**
+     * @param words a bitset
+     * @param i     the bit to test
+     * @return true if bit i of the bitset is set
+     */
+    static boolean get(long[] words, int i) {
+        return (words[i >>> 6] & (1L << i)) != 0;
+    }
+
+    /**
+     * @param words a bitset
+     * @param from  the first bit to look at
+     * @return the index of the first bit set from index from on, or -1 if there's none
+     */
+    static int nextSetBit(long[] words, int from) {
+        int w = from >>> 6;
+        if (w >= words.length)
+            return -1;
+
+        long word = words[w] & (-1L << from);
+        while (word == 0) {
+            if (++w == words.length)
+                return -1;
+            word = words[w];
+        }
+        return (w << 6) + lowestBit(word);
+    }
+}
@@ -1,9 +1,5 @@
 package bexpred;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Hashtable;
-
 /*
  * BExpred - Boolean Expression Reducer
  * Goal: To reduce specified boolean expressions
@@ -30,94 +26,447 @@ import java.util.Hashtable;
  */
 
 class CoverTable {
-    private final boolean[][] table;
-    private final ArrayList cols = new ArrayList();
-    private final ArrayList usedCols = new ArrayList();
-    private final Hashtable colIndices = new Hashtable(); // Key: Position in truth table, Value: Index in cols
+    // The primes are the rows of the table, and the rows of the truth table they
+    // cover are its columns. Both are bitsets: rows[i] holds the columns covered by
+    // prime i, columns[s] the primes covering column s.
+    private final long[][] rows;
+    private final long[][] columns;
+    private final int rowCount;
+    private final int colCount;
     private final QMGroup minTerms;
 
-    CoverTable(QMGroup minTerms) {
-        this.minTerms = minTerms;
+    // The budget of the exact search, the defaults can be set with the
+    // turaco.cover.nodes and turaco.cover.millis properties
+    private long max_nodes = Long.getLong("turaco.cover.nodes", 1000000).longValue();
+    private long max_millis = Long.getLong("turaco.cover.millis", 10000).longValue();
+    private boolean optimal = true;
+    private CoverState best; // The smallest cover found by the running search
+    private long nodes;
+    private long deadline;
 
-        for (int i = 0; i < minTerms.size(); i++) {
-            this.copyCoveredRows(((QMItem) minTerms.get(i)).coveredRows, this.cols);
-        }
+    /**
+     * @param minTerms the primes
+     * @param minterms the rows of the truth table the primes have to cover, the columns
+     * @param colCount the number of rows in minterms
+     * @param varCount the number of variables of the function
+     */
+    CoverTable(QMGroup minTerms, long[] minterms, int colCount, int varCount) {
+        LongIntMap colIndices = new LongIntMap(colCount); // Key: Position in truth table, Value: Index of the column
+        long varMask = varCount == 64 ? -1L : (1L << varCount) - 1;
+        long care, value, dashes, sub;
+        int col;
+        QMItem anItem;
 
-        this.table = new boolean[minTerms.size()][cols.size()];
-        for (int i = 0; i < this.table.length; i++) {
-            Arrays.fill(this.table[i], false);
+        this.minTerms = minTerms;
+        this.rowCount = minTerms.size();
+        this.colCount = colCount;
+        for (int s = 0; s < colCount; s++) {
+            colIndices.put(minterms[s], s);
         }
 
-        for (int i = 0; i < minTerms.size(); i++) {
-            for (int s = 0; s < minTerms.get(i).coveredRows.size(); s++) {
-                table[i][((Integer) colIndices.get(minTerms.get(i).coveredRows.get(s))).intValue()] = true;
+        this.rows = new long[this.rowCount][Bits.wordCount(this.colCount)];
+        this.columns = new long[this.colCount][Bits.wordCount(this.rowCount)];
+        for (int i = 0; i < this.rowCount; i++) {
+            anItem = minTerms.get(i);
+            care = anItem.getCare();
+            value = anItem.getValue();
+            dashes = varMask & ~care;
+
+            if (Bits.bitCount(dashes) < 31 && (1L << Bits.bitCount(dashes)) <= colCount) {
+                // Enumerate the rows of the prime, every subset of its don't cares
+                sub = 0;
+                do {
+                    col = colIndices.get(value | sub, -1);
+                    if (col != -1)
+                        this.set(i, col);
+                    sub = (sub - dashes) & dashes;
+                } while (sub != 0);
+            } else {
+                // The prime covers more rows than there are columns, test the columns instead
+                for (int s = 0; s < colCount; s++) {
+                    if ((minterms[s] & care) == value)
+                        this.set(i, s);
+                }
             }
         }
     }
 
-    private void copyCoveredRows(ArrayList from, ArrayList to) {
-        for (int i = 0; i < from.size(); i++) {
-            if (!to.contains(from.get(i))) {
-                to.add(from.get(i));
-                colIndices.put(from.get(i), new Integer(colIndices.size()));
-            }
-        }
+    private void set(int row, int col) {
+        this.rows[row][col >>> 6] |= 1L << col;
+        this.columns[col][row >>> 6] |= 1L << row;
+    }
+
+    /**
+     * Sets the limits of the exact search, once either is reached the best cover
+     * found so far is returned.
+     *
+     * @param maxNodes  the number of nodes the search may visit
+     * @param maxMillis the time the search may take, in milliseconds
+     */
+    public void setBudget(long maxNodes, long maxMillis) {
+        this.max_nodes = maxNodes;
+        this.max_millis = maxMillis;
+    }
+
+    /**
+     * @return false if the last exact reduction ran out of budget before proving its cover minimal
+     */
+    public boolean isOptimal() {
+        return this.optimal;
     }
 
     public QMGroup reduce() {
-        QMGroup required = new QMGroup(); // Contains column index of cols with a single checked item
-        int cnt, maxCnt, row = -1;
+        return this.reduce(TruthTable.REDUCE_GREEDY);
+    }
+
+    /**
+     * Picks the primes covering all columns. The essential primes are taken and
+     * the dominated rows and dominating columns are removed until nothing changes.
+     * Then, with REDUCE_GREEDY, the prime covering the most columns is taken and it
+     * starts over. With REDUCE_EXACT, the cover of the remaining columns with the
+     * fewest primes is searched for.
+     *
+     * @param method TruthTable.REDUCE_GREEDY or TruthTable.REDUCE_EXACT
+     * @return the picked primes, in the order they were picked
+     */
+    public QMGroup reduce(int method) {
+        CoverState state = new CoverState(this.rowCount, this.colCount);
+        int row, cnt, maxCnt;
+
+        this.optimal = true;
+        while (true) {
+            this.simplify(state);
+            if (isEmpty(state.uncovered))
+                break;
 
-        usedCols.clear();
+            if (method == TruthTable.REDUCE_EXACT) {
+                state = this.searchExact(state);
+                break;
+            }
 
-        for (int s = 0; s < this.table[0].length; s++) {
-            cnt = 0;
-            for (int i = 0; i < this.table.length; i++) {
-                if (this.table[i][s]) {
+            // No essential prime is left, take the one covering the most columns
+            row = -1;
+            maxCnt = 0;
+            for (int i = Bits.nextSetBit(state.active, 0); i != -1; i = Bits.nextSetBit(state.active, i + 1)) {
+                cnt = countAnd(this.rows[i], state.uncovered);
+                if (cnt > maxCnt) {
+                    maxCnt = cnt;
                     row = i;
-                    cnt++;
                 }
             }
+            this.pick(row, state);
+        }
 
-            if (cnt == 1) {
-                this.cover(row);
-                required.add(this.minTerms.get(row));
-            }
+        QMGroup required = new QMGroup();
+        for (int i = 0; i < state.pickedCount; i++) {
+            required.add(this.minTerms.get(state.picked[i]));
         }
+        return required;
+    }
+
+    private void simplify(CoverState state) {
+        boolean changed;
+        do {
+            changed = this.pickEssentials(state);
+            if (isEmpty(state.uncovered))
+                return;
+            changed |= this.removeDominatedRows(state.active, state.uncovered);
+            changed |= this.removeDominatingColumns(state.active, state.uncovered);
+        } while (changed);
+    }
 
-        while (usedCols.size() != cols.size()) {
+    private CoverState searchExact(CoverState core) {
+        // Branch and bound over the cyclic core. The greedy cover is the first
+        // bound, every node then branches on the rows of its column with the fewest
+        // rows, the rows tried before being removed from the later branches.
+        CoverState greedy = new CoverState(core);
+        int row, cnt, maxCnt;
+        while (!isEmpty(greedy.uncovered)) {
+            row = -1;
             maxCnt = 0;
-            for (int i = 0; i < this.table.length; i++) {
-                cnt = this.uncoveredCount(i);
+            for (int i = Bits.nextSetBit(greedy.active, 0); i != -1; i = Bits.nextSetBit(greedy.active, i + 1)) {
+                cnt = countAnd(this.rows[i], greedy.uncovered);
                 if (cnt > maxCnt) {
                     maxCnt = cnt;
                     row = i;
                 }
             }
+            this.pick(row, greedy);
+            this.simplify(greedy);
+        }
+
+        this.best = greedy;
+        this.nodes = 0;
+        this.deadline = System.currentTimeMillis() + this.max_millis;
+        this.search(core);
+        return this.best;
+    }
+
+    private void search(CoverState state) {
+        // The depth of the search is bounded by the size of the best cover
+        if (++this.nodes > this.max_nodes || ((this.nodes & 1023) == 0 && System.currentTimeMillis() > this.deadline)) {
+            this.optimal = false;
+            return;
+        }
 
-            if (maxCnt > 0) {
-                this.cover(row);
-                required.add(this.minTerms.get(row));
+        this.simplify(state);
+        if (isEmpty(state.uncovered)) {
+            if (state.pickedCount < this.best.pickedCount)
+                this.best = state;
+            return;
+        }
+
+        // Rows excluded by earlier branches may leave a column without any
+        int col = -1, cnt, minCnt = Integer.MAX_VALUE;
+        for (int s = Bits.nextSetBit(state.uncovered, 0); s != -1; s = Bits.nextSetBit(state.uncovered, s + 1)) {
+            cnt = countAnd(this.columns[s], state.active);
+            if (cnt == 0)
+                return;
+            if (cnt < minCnt) {
+                minCnt = cnt;
+                col = s;
             }
         }
 
-        return required;
+        if (state.pickedCount + this.lowerBound(state) >= this.best.pickedCount)
+            return;
+
+        // Branch on the column with the fewest rows
+        long[] branches = new long[state.active.length];
+        for (int w = 0; w < branches.length; w++) {
+            branches[w] = this.columns[col][w] & state.active[w];
+        }
+
+        CoverState child;
+        for (int r = Bits.nextSetBit(branches, 0); r != -1; r = Bits.nextSetBit(branches, r + 1)) {
+            child = new CoverState(state);
+            this.pick(r, child);
+            this.search(child);
+            if (!this.optimal)
+                return; // Out of budget
+            if (state.pickedCount + 1 >= this.best.pickedCount)
+                return; // No sibling can do better than the cover just found
+
+            state.active[r >>> 6] &= ~(1L << r);
+        }
     }
 
-    private int uncoveredCount(int row) {
-        int cnt = 0;
-        for (int i = 0; i < this.table[row].length; i++) {
-            if (this.table[row][i] && !this.usedCols.contains(new Integer(i))) {
-                cnt++;
+    private int lowerBound(CoverState state) {
+        // Columns that share no row each need a prime of their own. They are
+        // picked greedily, the columns with the fewest rows first.
+        int[] counts = new int[this.colCount];
+        int[] order = new int[this.colCount];
+        int count = 0;
+        for (int s = Bits.nextSetBit(state.uncovered, 0); s != -1; s = Bits.nextSetBit(state.uncovered, s + 1)) {
+            counts[s] = countAnd(this.columns[s], state.active);
+            order[count++] = s;
+        }
+
+        // Insertion sort, the cores are small
+        int col, j;
+        for (int i = 1; i < count; i++) {
+            col = order[i];
+            for (j = i - 1; j >= 0 && counts[order[j]] > counts[col]; j--) {
+                order[j + 1] = order[j];
+            }
+            order[j + 1] = col;
+        }
+
+        long[] usedRows = new long[state.active.length];
+        long[] colRows;
+        int independent = 0;
+        boolean free;
+        for (int i = 0; i < count; i++) {
+            colRows = this.columns[order[i]];
+            free = true;
+            for (int w = 0; w < usedRows.length && free; w++) {
+                free = (colRows[w] & state.active[w] & usedRows[w]) == 0;
+            }
+            if (free) {
+                for (int w = 0; w < usedRows.length; w++) {
+                    usedRows[w] |= colRows[w] & state.active[w];
+                }
+                independent++;
             }
         }
+        return independent;
+    }
+
+    private void pick(int row, CoverState state) {
+        state.add(row);
+        state.active[row >>> 6] &= ~(1L << row);
+        for (int i = 0; i < state.uncovered.length; i++) {
+            state.uncovered[i] &= ~this.rows[row][i];
+        }
+    }
+
+    private boolean pickEssentials(CoverState state) {
+        // Picks the rows that are alone in covering a column
+        boolean changed = false;
+        int row;
+        for (int s = Bits.nextSetBit(state.uncovered, 0); s != -1; s = Bits.nextSetBit(state.uncovered, s + 1)) {
+            row = onlyRow(this.columns[s], state.active);
+            if (row != -1) {
+                this.pick(row, state);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+    private boolean removeDominatedRows(long[] active, long[] uncovered) {
+        // A row is removed if another row covers all of its uncovered columns. When
+        // both cover the same ones, the row with the most literals is removed, or
+        // the last one if they have as many.
+        boolean changed = false;
+        long[] candidates = new long[active.length];
+        int first;
+        for (int i = Bits.nextSetBit(active, 0); i != -1; i = Bits.nextSetBit(active, i + 1)) {
+            first = firstAnd(this.rows[i], uncovered);
+            if (first == -1) { // Nothing left to cover
+                active[i >>> 6] &= ~(1L << i);
+                changed = true;
+                continue;
+            }
+
+            // Rows covering all the columns of row i must cover the first one
+            for (int w = 0; w < candidates.length; w++) {
+                candidates[w] = this.columns[first][w] & active[w];
+            }
+            for (int q = Bits.nextSetBit(candidates, 0); q != -1; q = Bits.nextSetBit(candidates, q + 1)) {
+                if (q == i || !isSubset(this.rows[i], this.rows[q], uncovered))
+                    continue;
+
+                if (isSubset(this.rows[q], this.rows[i], uncovered) && !this.isWorse(i, q))
+                    continue; // Row q will be removed instead
+
+                active[i >>> 6] &= ~(1L << i);
+                changed = true;
+                break;
+            }
+        }
+        return changed;
+    }
+
+    private boolean isWorse(int row, int aRow) {
+        int literals = Bits.bitCount(this.minTerms.get(row).getCare()),
+                aLiterals = Bits.bitCount(this.minTerms.get(aRow).getCare());
+        return literals > aLiterals || (literals == aLiterals && row > aRow);
+    }
+
+    private boolean removeDominatingColumns(long[] active, long[] uncovered) {
+        // A column doesn't need to be covered if all the rows covering another
+        // column also cover it. Of columns covered by the same rows, the first is kept.
+        boolean changed = false;
+        long[] candidates = new long[uncovered.length];
+        int first;
+        for (int s = Bits.nextSetBit(uncovered, 0); s != -1; s = Bits.nextSetBit(uncovered, s + 1)) {
+            first = firstAnd(this.columns[s], active);
+            if (first == -1)
+                continue; // Can't be covered, only happens within the exact search
+
+            // Columns covered by all the rows of column s are covered by the first one
+            for (int w = 0; w < candidates.length; w++) {
+                candidates[w] = this.rows[first][w] & uncovered[w];
+            }
+            for (int c = Bits.nextSetBit(candidates, 0); c != -1; c = Bits.nextSetBit(candidates, c + 1)) {
+                if (c == s || !isSubset(this.columns[s], this.columns[c], active))
+                    continue;
+
+                if (c < s && isSubset(this.columns[c], this.columns[s], active))
+                    continue; // Covered by the same rows, column s will be removed instead
+
+                uncovered[c >>> 6] &= ~(1L << c);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private static boolean isEmpty(long[] words) {
+        for (int i = 0; i < words.length; i++) {
+            if (words[i] != 0)
+                return false;
+        }
+        return true;
+    }
+
+    private static int countAnd(long[] a, long[] b) {
+        int cnt = 0;
+        for (int i = 0; i < a.length; i++) {
+            cnt += Bits.bitCount(a[i] & b[i]);
+        }
         return cnt;
     }
 
-    private void cover(int row) {
-        for (int i = 0; i < this.table[row].length; i++) {
-            if (this.table[row][i] && !this.usedCols.contains(new Integer(i)))
-                this.usedCols.add(new Integer(i));
+    private static int firstAnd(long[] a, long[] b) {
+        for (int i = 0; i < a.length; i++) {
+            if ((a[i] & b[i]) != 0)
+                return (i << 6) + Bits.lowestBit(a[i] & b[i]);
+        }
+        return -1;
+    }
+
+    private static int onlyRow(long[] a, long[] b) {
+        // The single bit set in both a and b, or -1 if there are none or more than one
+        int row = -1;
+        long word;
+        for (int i = 0; i < a.length; i++) {
+            word = a[i] & b[i];
+            if (word == 0)
+                continue;
+            if (row != -1 || (word & (word - 1)) != 0)
+                return -1;
+            row = (i << 6) + Bits.lowestBit(word);
+        }
+        return row;
+    }
+
+    private static boolean isSubset(long[] a, long[] b, long[] within) {
+        // True if the bits of a that are set in within are all set in b
+        for (int i = 0; i < a.length; i++) {
+            if ((a[i] & within[i] & ~b[i]) != 0)
+                return false;
+        }
+        return true;
+    }
+}
+
+class CoverState {
+    // The state of a cover being built, copied at every branch of the exact search
+    final long[] active; // The rows that can still be picked
+    final long[] uncovered; // The columns that still have to be covered
+    int[] picked; // The picked rows, in order
+    int pickedCount = 0;
+
+    CoverState(int rowCount, int colCount) {
+        this.active = allSet(rowCount);
+        this.uncovered = allSet(colCount);
+        this.picked = new int[16];
+    }
+
+    CoverState(CoverState from) {
+        this.active = (long[]) from.active.clone();
+        this.uncovered = (long[]) from.uncovered.clone();
+        this.picked = (int[]) from.picked.clone();
+        this.pickedCount = from.pickedCount;
+    }
+
+    void add(int row) {
+        if (this.pickedCount == this.picked.length) {
+            int[] grown = new int[this.picked.length * 2];
+            System.arraycopy(this.picked, 0, grown, 0, this.pickedCount);
+            this.picked = grown;
+        }
+        this.picked[this.pickedCount++] = row;
+    }
+
+    private static long[] allSet(int bitCount) {
+        long[] words = new long[Bits.wordCount(bitCount)];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = -1L;
         }
+        if ((bitCount & 63) != 0)
+            words[words.length - 1] = (1L << bitCount) - 1;
+        return words;
     }
-}
\ No newline at end of file
+}
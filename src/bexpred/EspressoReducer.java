@@ -0,0 +1,637 @@
+package bexpred;
+
+import java.util.ArrayList;
+
+/*
+ * BExpred - Boolean Expression Reducer
+ * Goal: To reduce specified boolean expressions
+ * Current state: Evaluates a given expression with input values
+ * Copyright (c) 2003 Benjamin Biron
+ * License: GPL
+
+    This file is part of BExpred.
+
+    BExpred is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    BExpred is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with BExpred; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+ */
+
+class EspressoReducer {
+    // A heuristic two level minimizer in the style of Espresso, for functions with
+    // too many primes for QMReducer. It works on covers, lists of cubes stored as
+    // in QMItem:
+    //       EXPAND makes every cube a prime, as large as possible while inside the
+    //       ON and don't care sets
+    //       IRREDUNDANT removes the cubes covered by the other ones and the don't cares
+    //       REDUCE shrinks every cube to the smallest one holding what only it covers,
+    //       so the next EXPAND can grow it in another direction
+    // The three are repeated while the number of cubes and literals goes down. The
+    // result is a cover of primes none of which can be removed, usually close to
+    // the smallest one. All three only check cubes against covers: a cube is inside
+    // a cover if the cofactor of the cover on it is a tautology, which is found by
+    // splitting the cover on its variables rather than by going through the rows,
+    // and gives rows the cover misses if it isn't one. The cubes are checked
+    // against the ON and don't care covers rather than against an OFF cover, whose
+    // size has no bound for functions such as parity.
+    //
+    // The function is given either as cubes, with setCover(), or as a truth table.
+    // The table is read into a first cover by splitting it on the variables, from
+    // the last one down, until each block is all 1's or all 0's, and the blocks of
+    // 1's are grown into primes against the table right away, which keeps the
+    // cover small. That's the only step that reads rows, and takes time in
+    // proportion to the 2^n rows of the table, which is in a file past 30
+    // variables. Given cubes, the time depends on the cubes and how they overlap
+    // rather than on the number of variables, up to 62: 40 random cubes of 3 to 6
+    // literals are reduced in about 10 ms at 30 or 62 variables, and 200 of them
+    // in about 4 s at 30 variables and 7 s at 62.
+
+    private static final double[] CUBE_SIZES = new double[65]; // 2^-k, the share of the rows covered by a cube of k literals
+
+    static {
+        CUBE_SIZES[0] = 1;
+        for (int i = 1; i < CUBE_SIZES.length; i++) {
+            CUBE_SIZES[i] = CUBE_SIZES[i - 1] / 2;
+        }
+    }
+
+    private final int var_count;
+    private final long var_mask;
+    private TruthTable table; // Only while it's read by setTruthTable()
+    private CubeList on = new CubeList(); // The cover being minimized
+    private CubeList dc = new CubeList(); // The rows where the value doesn't matter
+    private CubeList allowed = new CubeList(); // The ON and don't care sets, which no cube may leave
+    private boolean isConst = false; // Will be true for expressions such as A*!A or A+!A
+    private boolean constVal; // Will contain the constant value
+
+    EspressoReducer(int varCount) {
+        if (varCount > 62)
+            throw new IllegalArgumentException("Only functions of up to 62 variables can be reduced");
+        this.var_count = varCount;
+        this.var_mask = (1L << varCount) - 1;
+    }
+
+    public void setTruthTable(TruthTable aTT) {
+        // Splits the table into blocks of 2^k rows starting at a multiple of 2^k, the
+        // rows of a block differing only in the first k variables. Every block of
+        // 1's is expanded into a prime, unless it's inside one found earlier.
+        long[] starts = new long[this.var_count + 1];
+        int[] sizes = new int[this.var_count + 1];
+        int stackSize = 0, k, blockValue;
+        long start, care;
+
+        this.table = aTT;
+        this.on = new CubeList();
+        starts[stackSize] = 0;
+        sizes[stackSize++] = this.var_count;
+        while (stackSize > 0) {
+            start = starts[--stackSize];
+            k = sizes[stackSize];
+            care = this.var_mask & (-1L << k);
+            blockValue = blockValue(aTT, start, k);
+            if (blockValue == 1) {
+                if (!this.on.contains(care, start)) {
+                    care = this.expandBlock(care, start);
+                    this.on.add(care, start & care);
+                }
+            } else if (blockValue == -1) {
+                // The lower half is pushed last so the blocks are visited in row order
+                starts[stackSize] = start | (1L << (k - 1));
+                sizes[stackSize++] = k - 1;
+                starts[stackSize] = start;
+                sizes[stackSize++] = k - 1;
+            }
+        }
+
+        this.table = null;
+        this.dc = new CubeList();
+        this.allowed = this.on.copy();
+        this.isConst = this.on.size == 0 || this.on.care[0] == 0;
+        this.constVal = this.on.size != 0;
+    }
+
+    /**
+     * Sets the function from the cubes where it's 1 and the cubes where its value
+     * doesn't matter, without building its truth table. The cubes may overlap and
+     * needn't be primes, and the rows in both sets are don't cares.
+     *
+     * @param onSet the cubes where the function is 1
+     * @param dcSet the cubes where the value of the function doesn't matter, or null
+     * @throws IllegalArgumentException if a cube has a variable out of range
+     */
+    public void setCover(QMGroup onSet, QMGroup dcSet) {
+        this.table = null;
+        this.on = this.readCover(onSet);
+        this.dc = dcSet == null ? new CubeList() : this.readCover(dcSet);
+        this.allowed = this.on.copy();
+        for (int i = 0; i < this.dc.size; i++) {
+            this.allowed.add(this.dc.care[i], this.dc.value[i]);
+        }
+
+        // The don't cares can all be taken as 0, or as 1 when they fill the rest
+        this.isConst = this.on.size == 0 || isTautology(this.allowed);
+        this.constVal = this.on.size != 0;
+        if (!this.isConst)
+            this.expand();
+    }
+
+    private CubeList readCover(QMGroup cover) {
+        CubeList cubes = new CubeList();
+        QMItem anItem;
+        for (int i = 0; i < cover.size(); i++) {
+            anItem = cover.get(i);
+            if ((anItem.getCare() & ~this.var_mask) != 0)
+                throw new IllegalArgumentException("A cube is out of range for " + this.var_count + " variables");
+            cubes.add(anItem.getCare(), anItem.getValue() & anItem.getCare());
+        }
+        return cubes;
+    }
+
+    private static int blockValue(TruthTable aTT, long start, int k) {
+        // 1 or 0 if all the rows of the block have that output, -1 if they differ
+        if (k >= 6) {
+            long first = start >>> 6, count = 1L << (k - 6);
+            long word = aTT.getWord(first);
+            if (word != 0 && word != -1L)
+                return -1;
+            for (long i = 1; i < count; i++) {
+                if (aTT.getWord(first + i) != word)
+                    return -1;
+            }
+            return word == 0 ? 0 : 1;
+        }
+
+        long mask = (1L << (1 << k)) - 1;
+        long bits = (aTT.getWord(start >>> 6) >>> (start & 63)) & mask;
+        return bits == 0 ? 0 : bits == mask ? 1 : -1;
+    }
+
+    private long expandBlock(long care, long value) {
+        // Drops the literals of a block of 1's one after the other, as long as the
+        // rows it gains are 1's too. Returns the new care.
+        long literal;
+        for (long bits = care; bits != 0; bits &= bits - 1) {
+            literal = bits & -bits;
+            // The rows gained are the ones of the cube with the literal inverted
+            if (this.isConstantCube(care, (value ^ literal) & care))
+                care &= ~literal;
+        }
+        return care;
+    }
+
+    private boolean isConstantCube(long care, long value) {
+        // True if all the rows of the cube are 1's in the table being read. The
+        // first 6 variables select rows within the words, the others select the words.
+        long rows = this.var_count < 6 ? (1L << (1 << this.var_count)) - 1 : -1L;
+        for (int s = 0; s < 6 && s < this.var_count; s++) {
+            if (((care >>> s) & 1) != 0)
+                rows &= ((value >>> s) & 1) != 0 ? TruthTable.COLUMN_PATTERNS[s] : ~TruthTable.COLUMN_PATTERNS[s];
+        }
+
+        long freeWords = (this.var_mask & ~care) >>> 6;
+        long base = value >>> 6, sub = 0, word;
+        do {
+            word = this.table.getWord(base | sub) & rows;
+            if (word != rows)
+                return false;
+            sub = (sub - freeWords) & freeWords; // The next subset of the free words
+        } while (sub != 0);
+        return true;
+    }
+
+    public String reduce(ArrayList varNames) {
+        return QMReducer.formatCover(this.reduceCover(), varNames);
+    }
+
+    /**
+     * Minimizes the cover of the function
+     *
+     * @return the cubes of the minimized cover, empty for FALSE and the single term
+     *         without variables for TRUE
+     */
+    public QMGroup reduceCover() {
+        QMGroup cover = new QMGroup();
+        if (this.isConst) {
+            if (this.constVal)
+                cover.add(new QMItem(0, 0));
+            return cover;
+        }
+
+        this.irredundant();
+
+        CubeList best;
+        int cubes, literals;
+        do {
+            best = this.on.copy();
+            cubes = this.on.size;
+            literals = this.on.literalCount();
+
+            this.reduceCubes();
+            this.expand();
+            this.irredundant();
+        } while (this.on.size < cubes || (this.on.size == cubes && this.on.literalCount() < literals));
+
+        if (this.on.size > cubes || (this.on.size == cubes && this.on.literalCount() > literals))
+            this.on = best;
+
+        for (int i = 0; i < this.on.size; i++) {
+            cover.add(new QMItem(this.on.care[i], this.on.value[i]));
+        }
+        return cover;
+    }
+
+    private void expand() {
+        // Expands the cubes from the largest to the smallest, dropping the ones
+        // contained in an expanded cube
+        int[] order = this.on.byLiteralCount(true);
+        boolean[] covered = new boolean[this.on.size];
+        CubeList expanded = new CubeList();
+        int[] ones = new int[64], zeros = new int[64];
+        long care, value, bits;
+        int c;
+
+        // The number of cubes with each literal
+        for (c = 0; c < this.on.size; c++) {
+            for (bits = this.on.care[c]; bits != 0; bits &= bits - 1) {
+                if ((this.on.value[c] & bits & -bits) != 0)
+                    ones[Bits.lowestBit(bits)]++;
+                else
+                    zeros[Bits.lowestBit(bits)]++;
+            }
+        }
+
+        for (int i = 0; i < order.length; i++) {
+            c = order[i];
+            if (covered[c])
+                continue;
+
+            care = this.expandCube(c, ones, zeros);
+            value = this.on.value[c] & care;
+            expanded.add(care, value);
+
+            for (int s = i + 1; s < order.length; s++) {
+                c = order[s];
+                if ((this.on.care[c] & care) == care && (this.on.value[c] & care) == value)
+                    covered[c] = true;
+            }
+        }
+        this.on = expanded;
+    }
+
+    private long expandCube(int c, int[] ones, int[] zeros) {
+        // Drops the literals of a cube as long as it stays inside the ON set, first
+        // the ones the fewest other cubes share, so it's likely to grow over them.
+        // Returns the new care.
+        long care = this.on.care[c], value = this.on.value[c], bits;
+        int best, b;
+
+        for (long left = care; left != 0; left &= ~(1L << best)) {
+            best = Bits.lowestBit(left);
+            for (bits = left & (left - 1); bits != 0; bits &= bits - 1) {
+                b = Bits.lowestBit(bits);
+                if (sharing(b, value, ones, zeros) < sharing(best, value, ones, zeros))
+                    best = b;
+            }
+            if (this.isAllowed(care, (value ^ (1L << best)) & care))
+                care &= ~(1L << best);
+        }
+        return care;
+    }
+
+    private boolean isAllowed(long care, long value) {
+        // True if the cube is inside the ON and don't care sets
+        return isTautology(this.allowed.cofactor(care, value));
+    }
+
+    private static int sharing(int var, long value, int[] ones, int[] zeros) {
+        return ((value >>> var) & 1) != 0 ? ones[var] : zeros[var];
+    }
+
+    private void irredundant() {
+        // Removes the cubes covered by the others, the smallest ones first
+        int[] order = this.on.byLiteralCount(false);
+        boolean[] removed = new boolean[this.on.size];
+        int c;
+
+        for (int i = 0; i < order.length; i++) {
+            c = order[i];
+            if (isTautology(this.othersCofactor(c, removed)))
+                removed[c] = true;
+        }
+
+        CubeList kept = new CubeList();
+        for (int i = 0; i < this.on.size; i++) {
+            if (!removed[i])
+                kept.add(this.on.care[i], this.on.value[i]);
+        }
+        this.on = kept;
+    }
+
+    private void reduceCubes() {
+        // Shrinks every cube, from the largest to the smallest, to the smallest cube
+        // holding the rows none of the other cubes cover
+        int[] order = this.on.byLiteralCount(true);
+        boolean[] removed = new boolean[this.on.size];
+        long[] shrunk;
+        int c;
+
+        for (int i = 0; i < order.length; i++) {
+            c = order[i];
+            shrunk = complementSupercube(this.othersCofactor(c, removed));
+            if (shrunk == null) {
+                removed[c] = true; // Covered by the others
+            } else {
+                this.on.care[c] |= shrunk[0];
+                this.on.value[c] |= shrunk[1];
+            }
+        }
+
+        CubeList kept = new CubeList();
+        for (int i = 0; i < this.on.size; i++) {
+            if (!removed[i])
+                kept.add(this.on.care[i], this.on.value[i]);
+        }
+        this.on = kept;
+    }
+
+    private CubeList othersCofactor(int c, boolean[] removed) {
+        // The cofactor of the cover and the don't cares on cube c, leaving out c and
+        // the removed cubes
+        long care = this.on.care[c], value = this.on.value[c];
+        CubeList cofactor = this.dc.cofactor(care, value);
+        for (int s = 0; s < this.on.size; s++) {
+            if (s != c && !removed[s] && ((this.on.value[s] ^ value) & this.on.care[s] & care) == 0)
+                cofactor.add(this.on.care[s] & ~care, this.on.value[s] & ~care);
+        }
+        return cofactor;
+    }
+
+    private static boolean isTautology(CubeList cover) {
+        // True if the cubes cover every row
+        return missedRows(cover) == null;
+    }
+
+    private static long[] missedRows(CubeList cover) {
+        // A cube of rows none of the cubes hold, as {care, value}, or null if they
+        // hold every row. The recursion is at most as deep as the number of
+        // variables, one of which is dropped at every level.
+        long pos = 0, neg = 0;
+        double share = 0;
+        for (int i = 0; i < cover.size; i++) {
+            if (cover.care[i] == 0)
+                return null;
+            pos |= cover.care[i] & cover.value[i];
+            neg |= cover.care[i] & ~cover.value[i];
+            share += CUBE_SIZES[Bits.bitCount(cover.care[i])];
+        }
+        long[] missed;
+        if (share < 1) {
+            // Not enough rows covered, even if the cubes didn't overlap
+            missed = missedByShares(cover);
+            if (missed != null)
+                return missed;
+        }
+
+        // A variable appearing on a single side can't help cover the rows where it
+        // has the other value, so the cubes using it can be left out, and are missed
+        // there
+        long unate = (pos | neg) & ~(pos & neg);
+        if (unate != 0) {
+            CubeList binate = new CubeList();
+            for (int i = 0; i < cover.size; i++) {
+                if ((cover.care[i] & unate) == 0)
+                    binate.add(cover.care[i], cover.value[i]);
+            }
+            missed = missedRows(binate);
+            if (missed != null)
+                missed = new long[]{missed[0] | unate, missed[1] | (neg & unate)};
+            return missed;
+        }
+
+        // Cubes without variables in common with the others cover every row only if
+        // they do on their own, or if the others do
+        long group = connectedVars(cover, cover.care[0]);
+        if (group != pos) {
+            CubeList inside = new CubeList(), outside = new CubeList();
+            for (int i = 0; i < cover.size; i++) {
+                if ((cover.care[i] & group) != 0)
+                    inside.add(cover.care[i], cover.value[i]);
+                else
+                    outside.add(cover.care[i], cover.value[i]);
+            }
+            missed = missedRows(inside);
+            if (missed == null)
+                return null;
+            long[] outsideMissed = missedRows(outside);
+            if (outsideMissed == null)
+                return null;
+            return new long[]{missed[0] | outsideMissed[0], missed[1] | outsideMissed[1]};
+        }
+
+        long var = mostUsedVar(cover, pos & neg);
+        missed = missedRows(cover.cofactor(var, 0));
+        if (missed != null)
+            return new long[]{missed[0] | var, missed[1]};
+        missed = missedRows(cover.cofactor(var, var));
+        if (missed != null)
+            return new long[]{missed[0] | var, missed[1] | var};
+        return null;
+    }
+
+    private static long[] missedByShares(CubeList cover) {
+        // For covers holding less than all the rows even without overlapping: fixes
+        // the variables one after the other to the value leaving the smaller share
+        // of rows in the cubes still met. That share stays under 1, so once all the
+        // variables of a cube are fixed it's no longer met, and when none is the rows
+        // with the values fixed are missed. Null if the rounding of the shares made
+        // it fail.
+        double[] shares = new double[cover.size];
+        double zero, one;
+        long vars = 0, var, care = 0, value = 0;
+        int met = cover.size;
+        for (int i = 0; i < cover.size; i++) {
+            shares[i] = CUBE_SIZES[Bits.bitCount(cover.care[i])];
+            vars |= cover.care[i];
+        }
+
+        for (; met > 0 && vars != 0; vars &= vars - 1) {
+            var = vars & -vars;
+            zero = 0;
+            one = 0;
+            for (int i = 0; i < cover.size; i++) {
+                if ((cover.care[i] & var) == 0) {
+                    zero += shares[i];
+                    one += shares[i];
+                } else if ((cover.value[i] & var) == 0) {
+                    zero += 2 * shares[i];
+                } else {
+                    one += 2 * shares[i];
+                }
+            }
+
+            care |= var;
+            if (one < zero)
+                value |= var;
+            for (int i = 0; i < cover.size; i++) {
+                if ((cover.care[i] & var) == 0 || shares[i] == 0)
+                    continue;
+                if (((cover.value[i] ^ value) & var) == 0) {
+                    shares[i] *= 2;
+                } else {
+                    shares[i] = 0;
+                    met--;
+                }
+            }
+        }
+        return met == 0 ? new long[]{care, value} : null;
+    }
+
+    private static long connectedVars(CubeList cover, long vars) {
+        // The given variables, with the ones of every cube sharing one of them, and so on
+        boolean grown;
+        do {
+            grown = false;
+            for (int i = 0; i < cover.size; i++) {
+                if ((cover.care[i] & vars) != 0 && (cover.care[i] & ~vars) != 0) {
+                    vars |= cover.care[i];
+                    grown = true;
+                }
+            }
+        } while (grown);
+        return vars;
+    }
+
+    private static long[] complementSupercube(CubeList cover) {
+        // The smallest cube holding all the rows the cover doesn't, as {care, value},
+        // or null if it covers every row. It starts as rows the cover misses, and
+        // loses each of its variables for which rows are missed with the other value.
+        long[] missed = missedRows(cover), other;
+        if (missed == null)
+            return null;
+
+        long care = missed[0], value = missed[1], var;
+        for (long bits = care; bits != 0; bits &= bits - 1) {
+            var = bits & -bits;
+            if ((care & var) == 0)
+                continue;
+            other = missedRows(cover.cofactor(var, ~value & var));
+            if (other != null)
+                care &= ~(var | ((value ^ other[1]) & other[0]));
+        }
+        return new long[]{care, value & care};
+    }
+
+    private static long mostUsedVar(CubeList cover, long candidates) {
+        // The variable of candidates that is part of the most cubes
+        int[] counts = new int[64];
+        long bits;
+        for (int i = 0; i < cover.size; i++) {
+            for (bits = cover.care[i] & candidates; bits != 0; bits &= bits - 1) {
+                counts[Bits.lowestBit(bits)]++;
+            }
+        }
+
+        int best = Bits.lowestBit(candidates);
+        for (int b = best + 1; b < 64; b++) {
+            if (counts[b] > counts[best])
+                best = b;
+        }
+        return 1L << best;
+    }
+}
+
+class CubeList {
+    // A cover: cube i is made of the variables of care[i], with the values of value[i]
+    long[] care = new long[16];
+    long[] value = new long[16];
+    int size = 0;
+    private int lastContaining = 0;
+
+    void add(long care, long value) {
+        if (this.size == this.care.length) {
+            long[] grown = new long[this.size * 2];
+            System.arraycopy(this.care, 0, grown, 0, this.size);
+            this.care = grown;
+            grown = new long[this.size * 2];
+            System.arraycopy(this.value, 0, grown, 0, this.size);
+            this.value = grown;
+        }
+        this.care[this.size] = care;
+        this.value[this.size++] = value;
+    }
+
+    boolean contains(long care, long value) {
+        // True if one of the cubes contains the given one. Neighbouring cubes are
+        // usually contained in the same one, so the last one found is tried first.
+        int i = this.lastContaining;
+        if (i < this.size && (care & this.care[i]) == this.care[i] && (value & this.care[i]) == this.value[i])
+            return true;
+
+        for (i = 0; i < this.size; i++) {
+            if ((care & this.care[i]) == this.care[i] && (value & this.care[i]) == this.value[i]) {
+                this.lastContaining = i;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    CubeList copy() {
+        CubeList aCopy = new CubeList();
+        for (int i = 0; i < this.size; i++) {
+            aCopy.add(this.care[i], this.value[i]);
+        }
+        return aCopy;
+    }
+
+    int literalCount() {
+        int count = 0;
+        for (int i = 0; i < this.size; i++) {
+            count += Bits.bitCount(this.care[i]);
+        }
+        return count;
+    }
+
+    /**
+     * @param care  the variables of a cube
+     * @param value their values
+     * @return the cubes meeting the given one, without its variables
+     */
+    CubeList cofactor(long care, long value) {
+        CubeList cofactor = new CubeList();
+        for (int i = 0; i < this.size; i++) {
+            if (((this.value[i] ^ value) & this.care[i] & care) == 0)
+                cofactor.add(this.care[i] & ~care, this.value[i] & ~care);
+        }
+        return cofactor;
+    }
+
+    int[] byLiteralCount(boolean fewestFirst) {
+        // The indices of the cubes sorted by their number of literals, keeping the
+        // order of cubes with as many
+        int[] starts = new int[66];
+        int[] keys = new int[this.size];
+        int[] order = new int[this.size];
+        for (int i = 0; i < this.size; i++) {
+            keys[i] = fewestFirst ? Bits.bitCount(this.care[i]) : 64 - Bits.bitCount(this.care[i]);
+            starts[keys[i] + 1]++;
+        }
+        for (int k = 1; k < starts.length; k++) {
+            starts[k] += starts[k - 1];
+        }
+        for (int i = 0; i < this.size; i++) {
+            order[starts[keys[i]]++] = i;
+        }
+        return order;
+    }
+}
@@ -0,0 +1,102 @@
+package bexpred;
+
+/*
+ * BExpred - Boolean Expression Reducer
+ * Goal: To reduce specified boolean expressions
+ * Current state: Evaluates a given expression with input values
+ * Copyright (c) 2003 Benjamin Biron
+ * License: GPL
+
+    This file is part of BExpred.
+
+    BExpred is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    BExpred is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with BExpred; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+ */
+
+class LongIntMap {
+    // A hash map from long keys to int values that doesn't box either, using open
+    // addressing with linear probing. Entries can't be removed.
+    private long[] keys;
+    private int[] values;
+    private boolean[] used;
+    private int size = 0;
+    private int shift; // 64 - log2 of the capacity, the hash is the top bits of the mixed key
+
+    LongIntMap(int expectedSize) {
+        int capacity = 16;
+        this.shift = 60;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+            this.shift--;
+        }
+        this.keys = new long[capacity];
+        this.values = new int[capacity];
+        this.used = new boolean[capacity];
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @param key     the key to look up
+     * @param missing the value returned if the key isn't in the map
+     * @return the value of the key
+     */
+    public int get(long key, int missing) {
+        int mask = this.keys.length - 1;
+        for (int i = this.slot(key); this.used[i]; i = (i + 1) & mask) {
+            if (this.keys[i] == key)
+                return this.values[i];
+        }
+        return missing;
+    }
+
+    public void put(long key, int value) {
+        int mask = this.keys.length - 1, i;
+        for (i = this.slot(key); this.used[i]; i = (i + 1) & mask) {
+            if (this.keys[i] == key) {
+                this.values[i] = value;
+                return;
+            }
+        }
+
+        this.used[i] = true;
+        this.keys[i] = key;
+        this.values[i] = value;
+        if (++this.size * 2 > this.keys.length)
+            this.grow();
+    }
+
+    private int slot(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> this.shift);
+    }
+
+    private void grow() {
+        long[] oldKeys = this.keys;
+        int[] oldValues = this.values;
+        boolean[] oldUsed = this.used;
+
+        this.keys = new long[oldKeys.length * 2];
+        this.values = new int[oldKeys.length * 2];
+        this.used = new boolean[oldKeys.length * 2];
+        this.shift--;
+        this.size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i])
+                this.put(oldKeys[i], oldValues[i]);
+        }
+    }
+}
@@ -0,0 +1,387 @@
+package bexpred;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+/*
+ * BExpred - Boolean Expression Reducer
+ * Goal: To reduce specified boolean expressions
+ * Current state: Evaluates a given expression with input values
+ * Copyright (c) 2003 Benjamin Biron
+ * License: GPL
+
+    This file is part of BExpred.
+
+    BExpred is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    BExpred is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with BExpred; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+ */
+
+class NPNTable {
+    // The smallest sums of products of all the functions of up to 4 variables, found
+    // once and looked up. Functions that only differ by a renaming of their inputs,
+    // inverted inputs or an inverted output (NPN transforms) have sums of products
+    // of the same size, so only one function of each of the 222 NPN classes is kept:
+    // the one whose 16 bit truth table is the smallest number. A function is turned
+    // into that one, and the terms kept for it are turned back.
+    //
+    // The table is written by main() when the jar is built, and read the first time
+    // it's needed. If it's missing, it's built in memory instead, which takes about
+    // a second.
+    //
+    // 5 variables would need 616126 classes, too many to build and ship.
+
+    static final int MAX_VARS = 4;
+    private static final String RESOURCE = "npn4.dat";
+    private static final int MAGIC = 0x4E504E34; // NPN4
+
+    // Every transform turning an input x into y: y's bit perm[i] is x's bit i, inverted if bit i of flips is set
+    private static final int TRANSFORM_COUNT = 24 * 16;
+    private static final int[][] PERMUTATIONS = permutations();
+    private static final byte[][] ROW_MAPS = rowMaps(); // For every transform and row y, the row x
+
+    private static int[] representatives; // The function of every class, sorted
+    private static byte[][] cubes; // For every class, the terms of its function then of its inverse
+    private static int[] inverse_starts; // Where the terms of the inverse start in cubes
+
+    private NPNTable() {
+    }
+
+    private static int[][] permutations() {
+        int[][] perms = new int[24][];
+        int count = 0;
+        for (int a = 0; a < 4; a++) {
+            for (int b = 0; b < 4; b++) {
+                for (int c = 0; c < 4; c++) {
+                    if (a != b && a != c && b != c)
+                        perms[count++] = new int[]{a, b, c, 6 - a - b - c};
+                }
+            }
+        }
+        return perms;
+    }
+
+    private static byte[][] rowMaps() {
+        byte[][] maps = new byte[TRANSFORM_COUNT][16];
+        int[] perm;
+        int x;
+        for (int t = 0; t < TRANSFORM_COUNT; t++) {
+            perm = PERMUTATIONS[t >> 4];
+            for (int y = 0; y < 16; y++) {
+                x = 0;
+                for (int i = 0; i < 4; i++) {
+                    x |= (((y >> perm[i]) ^ (t >> i)) & 1) << i;
+                }
+                maps[t][y] = (byte) x;
+            }
+        }
+        return maps;
+    }
+
+    private static int transform(int f, int t) {
+        // g(y) = f(x)
+        int g = 0;
+        byte[] map = ROW_MAPS[t];
+        for (int y = 0; y < 16; y++) {
+            g |= ((f >> map[y]) & 1) << y;
+        }
+        return g;
+    }
+
+    private static int[] canonical(int f) {
+        // {representative, transform, 1 if the output is inverted}
+        int best = 0x10000, bestTransform = 0, inverted = 0, g;
+        for (int t = 0; t < TRANSFORM_COUNT; t++) {
+            g = transform(f, t);
+            if (g < best) {
+                best = g;
+                bestTransform = t;
+                inverted = 0;
+            }
+            g ^= 0xFFFF;
+            if (g < best) {
+                best = g;
+                bestTransform = t;
+                inverted = 1;
+            }
+        }
+        return new int[]{best, bestTransform, inverted};
+    }
+
+    /**
+     * Reduces a function of up to 4 variables to its smallest sum of products, the
+     * fewest terms and then the fewest literals
+     *
+     * @param aTT      the truth table of the function
+     * @param varNames the names of its variables
+     * @return the sum of products, or TRUE or FALSE for constant functions
+     */
+    static String getSOP(TruthTable aTT, ArrayList varNames) {
+        int varCount = aTT.getVarCount();
+        if (varCount > MAX_VARS)
+            throw new IllegalArgumentException("Only functions of up to " + MAX_VARS + " variables are in the table");
+
+        // Repeat the rows as if the missing variables were there, the function
+        // doesn't depend on them
+        int rows = 1 << varCount;
+        int f = (int) aTT.getWord(0) & ((1 << rows) - 1);
+        for (; rows < 16; rows *= 2) {
+            f |= f << rows;
+        }
+        if (f == 0)
+            return "FALSE";
+        if (f == 0xFFFF)
+            return "TRUE";
+
+        load();
+        int[] form = canonical(f);
+        int c = find(form[0]);
+        int start = form[2] == 0 ? 0 : inverse_starts[c];
+        int end = form[2] == 0 ? inverse_starts[c] : cubes[c].length;
+
+        // A term of the representative on y becomes one on x: y's bit perm[i] is x's
+        // bit i, inverted if bit i of the transform is set
+        int[] perm = PERMUTATIONS[form[1] >> 4];
+        int count = (end - start) / 2, care, value, yCare, yValue;
+        int[] terms = new int[count];
+        for (int k = 0; k < count; k++) {
+            yCare = cubes[c][start + 2 * k];
+            yValue = cubes[c][start + 2 * k + 1];
+            care = 0;
+            value = 0;
+            for (int i = 0; i < 4; i++) {
+                if (((yCare >> perm[i]) & 1) != 0) {
+                    care |= 1 << i;
+                    value |= (((yValue >> perm[i]) ^ (form[1] >> i)) & 1) << i;
+                }
+            }
+            terms[k] = (care << 4) | value;
+        }
+
+        // Sorted, so the same function always gives the same expression
+        for (int i = 1; i < count; i++) {
+            int term = terms[i], k = i;
+            while (k > 0 && terms[k - 1] > term) {
+                terms[k] = terms[k - 1];
+                k--;
+            }
+            terms[k] = term;
+        }
+
+        StringBuffer aLine = new StringBuffer();
+        for (int k = 0; k < count; k++) {
+            if (aLine.length() != 0)
+                aLine.append(" + ");
+            aLine.append(QMReducer.formatTerm(terms[k] >> 4, terms[k] & 15, varNames));
+        }
+        return aLine.toString();
+    }
+
+    private static int find(int representative) {
+        int low = 0, high = representatives.length - 1, mid;
+        while (low <= high) {
+            mid = (low + high) >>> 1;
+            if (representatives[mid] < representative)
+                low = mid + 1;
+            else if (representatives[mid] > representative)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        throw new IllegalStateException("Function " + representative + " isn't in the NPN table");
+    }
+
+    private static synchronized void load() {
+        if (representatives != null)
+            return;
+
+        InputStream in = NPNTable.class.getResourceAsStream(RESOURCE);
+        if (in != null) {
+            try {
+                DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+                try {
+                    read(data);
+                    return;
+                } finally {
+                    data.close();
+                }
+            } catch (IOException e) {
+                // Built below
+            }
+        }
+        build();
+    }
+
+    private static void read(DataInputStream data) throws IOException {
+        if (data.readInt() != MAGIC)
+            throw new IOException("Not an NPN table");
+        int classCount = data.readInt();
+        int[] reps = new int[classCount];
+        byte[][] terms = new byte[classCount][];
+        int[] starts = new int[classCount];
+        for (int c = 0; c < classCount; c++) {
+            reps[c] = data.readUnsignedShort();
+            starts[c] = data.readUnsignedByte();
+            terms[c] = new byte[data.readUnsignedByte()];
+            data.readFully(terms[c]);
+        }
+
+        cubes = terms;
+        inverse_starts = starts;
+        representatives = reps;
+    }
+
+    private static void write(DataOutputStream data) throws IOException {
+        data.writeInt(MAGIC);
+        data.writeInt(representatives.length);
+        for (int c = 0; c < representatives.length; c++) {
+            data.writeShort(representatives[c]);
+            data.writeByte(inverse_starts[c]);
+            data.writeByte(cubes[c].length);
+            data.write(cubes[c]);
+        }
+    }
+
+    private static void build() {
+        // Finds the representative of every function, then the terms of each
+        boolean[] isRepresentative = new boolean[0x10000];
+        int classCount = 0;
+        for (int f = 0; f < 0x10000; f++) {
+            int rep = canonical(f)[0];
+            if (!isRepresentative[rep]) {
+                isRepresentative[rep] = true;
+                classCount++;
+            }
+        }
+
+        int[] reps = new int[classCount];
+        byte[][] terms = new byte[classCount][];
+        int[] starts = new int[classCount];
+        int c = 0;
+        for (int f = 0; f < 0x10000; f++) {
+            if (!isRepresentative[f])
+                continue;
+            byte[] direct = minimalCover(f), inverse = minimalCover(f ^ 0xFFFF);
+            terms[c] = new byte[direct.length + inverse.length];
+            System.arraycopy(direct, 0, terms[c], 0, direct.length);
+            System.arraycopy(inverse, 0, terms[c], direct.length, inverse.length);
+            starts[c] = direct.length;
+            reps[c++] = f;
+        }
+
+        cubes = terms;
+        inverse_starts = starts;
+        representatives = reps;
+    }
+
+    private static int cubeRows(int care, int value) {
+        // The rows of a term, as a 16 bit truth table
+        int rows = 0xFFFF;
+        for (int i = 0; i < 4; i++) {
+            if (((care >> i) & 1) != 0)
+                rows &= ((value >> i) & 1) != 0 ? (int) TruthTable.COLUMN_PATTERNS[i] & 0xFFFF : ~(int) TruthTable.COLUMN_PATTERNS[i] & 0xFFFF;
+        }
+        return rows;
+    }
+
+    private static byte[] minimalCover(int f) {
+        // The primes of f as {care, value} pairs, then a search for the cover with the
+        // fewest terms and literals, branching on the primes covering the lowest row
+        // left. There are at most 81 terms of 4 variables, so it's quick.
+        int[] primeCare = new int[81], primeValue = new int[81], primeRows = new int[81];
+        int primeCount = 0, rows;
+        boolean prime;
+        for (int care = 0; care < 16; care++) {
+            for (int value = care; ; value = (value - 1) & care) {
+                rows = cubeRows(care, value);
+                if ((rows & ~f) == 0) {
+                    // A prime if no literal can be dropped
+                    prime = true;
+                    for (int i = 0; i < 4 && prime; i++) {
+                        if (((care >> i) & 1) != 0)
+                            prime = (cubeRows(care & ~(1 << i), value & ~(1 << i)) & ~f) != 0;
+                    }
+                    if (prime) {
+                        primeCare[primeCount] = care;
+                        primeValue[primeCount] = value;
+                        primeRows[primeCount++] = rows;
+                    }
+                }
+                if (value == 0)
+                    break;
+            }
+        }
+
+        int[] chosen = new int[16], best = new int[17]; // best[16] holds the size of the best cover
+        best[16] = -1;
+        int[] cost = {Integer.MAX_VALUE, Integer.MAX_VALUE}; // Terms, literals
+        searchCover(f, 0, 0, chosen, best, cost, primeCare, primeRows, primeCount);
+
+        byte[] cover = new byte[2 * best[16]];
+        for (int k = 0; k < best[16]; k++) {
+            cover[2 * k] = (byte) primeCare[best[k]];
+            cover[2 * k + 1] = (byte) primeValue[best[k]];
+        }
+        return cover;
+    }
+
+    private static void searchCover(int uncovered, int count, int literals, int[] chosen, int[] best,
+                                    int[] cost, int[] primeCare, int[] primeRows, int primeCount) {
+        if (uncovered == 0) {
+            if (count < cost[0] || (count == cost[0] && literals < cost[1])) {
+                cost[0] = count;
+                cost[1] = literals;
+                System.arraycopy(chosen, 0, best, 0, count);
+                best[16] = count;
+            }
+            return;
+        }
+        if (count + 1 > cost[0])
+            return;
+
+        int row = uncovered & -uncovered;
+        for (int p = 0; p < primeCount; p++) {
+            if ((primeRows[p] & row) == 0)
+                continue;
+            chosen[count] = p;
+            searchCover(uncovered & ~primeRows[p], count + 1, literals + Bits.bitCount(primeCare[p]), chosen, best,
+                    cost, primeCare, primeRows, primeCount);
+        }
+    }
+
+    /**
+     * Writes the table, run when the jar is built
+     *
+     * @param args the file to write to
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: java bexpred.NPNTable <file>");
+            System.exit(1);
+        }
+        build();
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(args[0])));
+        try {
+            write(data);
+        } finally {
+            data.close();
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package bexpred;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+
+/*
+ * BExpred - Boolean Expression Reducer
+ * Goal: To reduce specified boolean expressions
+ * Current state: Evaluates a given expression with input values
+ * Copyright (c) 2003 Benjamin Biron
+ * License: GPL
+
+    This file is part of BExpred.
+
+    BExpred is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    BExpred is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with BExpred; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+ */
+
+class PermutationMatcher {
+    // Finds if two expressions compute the same function once the variables of one
+    // are renamed to those of the other (P-equivalence), and how. Trying all n!
+    // renamings is out of the question, so every variable gets signatures that any
+    // renaming has to keep, from the truth table without the variables the output
+    // doesn't depend on:
+    //       The number of rows that are 1 where the variable is 1 (cofactor weight)
+    //       The number of pairs of rows, differing only in the variable, with
+    //       different outputs (sensitivity)
+    //       For every other variable, the number of rows that are 1 where both are 1
+    // A variable can only be mapped to one with the same first two, and a pair of
+    // variables to a pair with the same third one. The search maps the variables
+    // with the fewest candidates first, and checks the whole table for every
+    // complete mapping. Expressions of more than MAX_VARS variables don't get a
+    // truth table, their support is found with a BDD and the table of the function
+    // of the support alone is simulated from the expression.
+
+    static final int MAX_VARS = 24; // The tables are read into memory, 2^18 words
+
+    private final BExprTree tree;
+    private final BExprTree aTree;
+    private int mappings_tried = 0;
+
+    public PermutationMatcher(BExprTree tree, BExprTree aTree) {
+        this.tree = tree;
+        this.aTree = aTree;
+    }
+
+    /**
+     * @return the number of complete mappings checked against the whole table by
+     *         the last call to findMapping()
+     */
+    public int getMappingsTried() {
+        return this.mappings_tried;
+    }
+
+    /**
+     * Looks for a renaming of the variables of the first expression giving the
+     * second one. Only the variables the outputs depend on are renamed.
+     *
+     * @return the name in the second expression of each variable of the first one,
+     *         or null if there's no such renaming
+     * @throws IllegalArgumentException if the outputs depend on more than MAX_VARS variables
+     */
+    public Hashtable findMapping() {
+        boolean[] support = getSupport(this.tree), aSupport = getSupport(this.aTree);
+        ArrayList names = supportNames(this.tree, support), aNames = supportNames(this.aTree, aSupport);
+
+        this.mappings_tried = 0;
+        if (names.size() != aNames.size())
+            return null;
+        if (names.size() > MAX_VARS)
+            throw new IllegalArgumentException("Only functions of up to " + MAX_VARS + " variables can be matched");
+
+        long[] f = readWords(this.tree, support), g = readWords(this.aTree, aSupport);
+        int n = names.size();
+        if (countOnes(f) != countOnes(g))
+            return null;
+
+        long[] fWeights = new long[n], gWeights = new long[n];
+        long[] fSensitivity = new long[n], gSensitivity = new long[n];
+        long[][] fPairs = pairWeights(f, n), gPairs = pairWeights(g, n);
+        for (int v = 0; v < n; v++) {
+            fWeights[v] = fPairs[v][v];
+            gWeights[v] = gPairs[v][v];
+            fSensitivity[v] = sensitivity(f, v);
+            gSensitivity[v] = sensitivity(g, v);
+        }
+
+        // The variables of g each variable of f can be mapped to
+        int[][] candidates = new int[n][];
+        int[] order = new int[n];
+        int count;
+        for (int v = 0; v < n; v++) {
+            int[] found = new int[n];
+            count = 0;
+            for (int u = 0; u < n; u++) {
+                if (fWeights[v] == gWeights[u] && fSensitivity[v] == gSensitivity[u])
+                    found[count++] = u;
+            }
+            if (count == 0)
+                return null;
+            candidates[v] = new int[count];
+            System.arraycopy(found, 0, candidates[v], 0, count);
+            order[v] = v;
+        }
+        // Fewest candidates first, an insertion sort is plenty for n variables
+        for (int i = 1; i < n; i++) {
+            int v = order[i], k = i;
+            while (k > 0 && candidates[order[k - 1]].length > candidates[v].length) {
+                order[k] = order[k - 1];
+                k--;
+            }
+            order[k] = v;
+        }
+
+        int[] map = new int[n];
+        if (!this.search(0, order, candidates, map, new boolean[n], fPairs, gPairs, f, g))
+            return null;
+
+        Hashtable mapping = new Hashtable();
+        for (int v = 0; v < n; v++) {
+            mapping.put(names.get(v), aNames.get(map[v]));
+        }
+        return mapping;
+    }
+
+    private boolean search(int depth, int[] order, int[][] candidates, int[] map, boolean[] used,
+                           long[][] fPairs, long[][] gPairs, long[] f, long[] g) {
+        // Maps the variable order[depth] to each of its candidates in turn. The
+        // recursion is as deep as the number of variables.
+        if (depth == order.length) {
+            this.mappings_tried++;
+            return sameFunction(f, g, map);
+        }
+
+        int v = order[depth], u, w;
+        boolean consistent;
+        for (int c = 0; c < candidates[v].length; c++) {
+            u = candidates[v][c];
+            if (used[u])
+                continue;
+
+            consistent = true;
+            for (int i = 0; i < depth && consistent; i++) {
+                w = order[i];
+                consistent = fPairs[v][w] == gPairs[u][map[w]];
+            }
+            if (!consistent)
+                continue;
+
+            map[v] = u;
+            used[u] = true;
+            if (this.search(depth + 1, order, candidates, map, used, fPairs, gPairs, f, g))
+                return true;
+            used[u] = false;
+        }
+        return false;
+    }
+
+    private static ArrayList supportNames(BExprTree aTree, boolean[] support) {
+        ArrayList names = new ArrayList();
+        for (int i = 0; i < support.length; i++) {
+            if (support[i])
+                names.add(aTree.getVars().get(i));
+        }
+        return names;
+    }
+
+    private static boolean[] getSupport(BExprTree aTree) {
+        // The variables the output depends on, by position in getVars()
+        if (aTree.getVarCount() <= MAX_VARS)
+            return aTree.getTruthTable().getSupport();
+
+        // Over the node limit of the BDD the support could be of any size, so the
+        // function is taken as one of too many variables to be matched
+        BDD aBDD = new BDD();
+        ArrayList order = aTree.getVarOrder();
+        boolean[] levels;
+        try {
+            levels = aBDD.getSupport(aTree.toBDD(aBDD, order), order.size());
+        } catch (IllegalStateException e) {
+            throw new IllegalArgumentException("Only functions of up to " + MAX_VARS + " variables can be matched");
+        } catch (StackOverflowError e) {
+            throw new IllegalArgumentException("Only functions of up to " + MAX_VARS + " variables can be matched");
+        }
+        boolean[] support = new boolean[aTree.getVarCount()];
+        for (int i = 0; i < levels.length; i++) {
+            if (levels[i])
+                support[aTree.getVars().indexOf(order.get(i))] = true;
+        }
+        return support;
+    }
+
+    private static long[] readWords(BExprTree aTree, boolean[] support) {
+        // The table of the function of the support variables alone, variable i of which
+        // is the support variable at position i in getVars()
+        if (aTree.getVarCount() <= MAX_VARS) {
+            TruthTable reduced = aTree.getTruthTable().getReducedTT(support);
+            long[] words = new long[(int) reduced.getWordCount()];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = reduced.getWord(i);
+            }
+            reduced.close();
+            return words;
+        }
+
+        // The other variables are left at 0, the output doesn't depend on them
+        int[] slots = new int[support.length];
+        int n = 0;
+        for (int i = 0; i < support.length; i++) {
+            if (support[i])
+                slots[n++] = i;
+        }
+        BExprProgram program = aTree.getProgram();
+        long[] inputs = new long[support.length], stack = new long[program.getMaxDepth()];
+        long[] words = new long[n < 6 ? 1 : 1 << (n - 6)];
+        for (int w = 0; w < words.length; w++) {
+            for (int i = 0; i < n; i++) {
+                inputs[slots[i]] = rowsWhereOne(i, w);
+            }
+            words[w] = program.evaluateWords(inputs, stack);
+        }
+        if (n < 6)
+            words[0] &= (1L << (1 << n)) - 1;
+        return words;
+    }
+
+    private static long countOnes(long[] words) {
+        long count = 0;
+        for (int i = 0; i < words.length; i++) {
+            count += Bits.bitCount(words[i]);
+        }
+        return count;
+    }
+
+    private static long rowsWhereOne(int var, int word) {
+        // The rows of the word where the variable is 1
+        if (var < 6)
+            return TruthTable.COLUMN_PATTERNS[var];
+        return -((word >>> (var - 6)) & 1);
+    }
+
+    private static long[][] pairWeights(long[] words, int n) {
+        // pairs[v][u] is the number of 1's where both variables are 1, pairs[v][v]
+        // where v is
+        long[][] pairs = new long[n][n];
+        long[] masks = new long[n];
+        long word;
+        for (int i = 0; i < words.length; i++) {
+            word = words[i];
+            if (word == 0)
+                continue;
+            for (int v = 0; v < n; v++) {
+                masks[v] = word & rowsWhereOne(v, i);
+            }
+            for (int v = 0; v < n; v++) {
+                if (masks[v] == 0)
+                    continue;
+                for (int u = v; u < n; u++) {
+                    pairs[v][u] += Bits.bitCount(masks[v] & rowsWhereOne(u, i));
+                }
+            }
+        }
+        for (int v = 0; v < n; v++) {
+            for (int u = 0; u < v; u++) {
+                pairs[v][u] = pairs[u][v];
+            }
+        }
+        return pairs;
+    }
+
+    private static long sensitivity(long[] words, int var) {
+        // The number of rows where the variable is 0 and flipping it changes the output
+        long count = 0;
+        if (var < 6) {
+            int shift = 1 << var;
+            long zeroRows = ~TruthTable.COLUMN_PATTERNS[var];
+            for (int i = 0; i < words.length; i++) {
+                count += Bits.bitCount((words[i] ^ (words[i] >>> shift)) & zeroRows);
+            }
+            return count;
+        }
+
+        int stride = 1 << (var - 6);
+        for (int base = 0; base < words.length; base += 2 * stride) {
+            for (int i = base; i < base + stride; i++) {
+                count += Bits.bitCount(words[i] ^ words[i + stride]);
+            }
+        }
+        return count;
+    }
+
+    private static boolean sameFunction(long[] f, long[] g, int[] map) {
+        // True if f(x) = g(y) for every row x, bit map[v] of row y being bit v of x
+        int n = map.length;
+        long rowCount = 1L << n, y;
+        for (long x = 0; x < rowCount; x++) {
+            y = 0;
+            for (int v = 0; v < n; v++) {
+                y |= ((x >>> v) & 1) << map[v];
+            }
+            if (Bits.get(f, (int) x) != Bits.get(g, (int) y))
+                return false;
+        }
+        return true;
+    }
+}
@@ -2,6 +2,8 @@ package bexpred;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.Hashtable;
 
 /*
  * BExpred - Boolean Expression Reducer
@@ -30,9 +32,25 @@ import java.util.Arrays;
 
 
 class QMReducer {
+    // The number of threads used by the combine step, unless set with setParallelism().
+    // It can be set with the turaco.qm.threads property.
+    static final int DEFAULT_PARALLELISM = Math.max(1, Integer.getInteger("turaco.qm.threads", 1).intValue());
+
     private final QMGroup[] groups; // The groped rows in the truth table containing same amount of 1's
     private boolean isConst = false; // Will be true for expressions such as A*!A or A+!A
     private boolean constVal; // Will contain the constant value
+    private long[] minterms = new long[16]; // The rows of the truth table that are 1, in order
+    private int mintermCount = 0;
+    private QMGroup primes; // Found on the first call to getPrimes()
+
+    // Counters of the combine step, set by getPrimes()
+    private long pairs_tested = 0; // Pairs of items with the same don't cares, the only ones that can merge
+    private long pairs_skipped = 0; // Pairs of items of adjacent groups that weren't compared
+    private long merges = 0; // Successful merges, including the ones giving duplicate items
+    private int parallelism = DEFAULT_PARALLELISM;
+    private long cover_nodes = -1; // The budget of the exact cover, -1 for the CoverTable defaults
+    private long cover_millis = -1;
+    private boolean cover_optimal = true;
 
     QMReducer(int varCount) {
         this.groups = new QMGroup[varCount + 1];
@@ -41,48 +59,206 @@ class QMReducer {
         }
     }
 
-    public void setBoolTT(boolean[][] aTT) {
+    public void setTruthTable(TruthTable aTT) {
+        this.primes = null;
+        this.load(aTT, true);
+    }
+
+    /**
+     * Sets the function along with its primes, found before with getPrimes(). Only
+     * the rows the primes have to cover are read, the items merged to find the primes
+     * aren't built.
+     *
+     * @param aTT    the truth table of the function
+     * @param primes the primes of the function
+     */
+    void setTruthTable(TruthTable aTT, QMGroup primes) {
+        this.primes = primes;
+        this.load(aTT, false);
+    }
+
+    private void load(TruthTable aTT, boolean grouped) {
+        // Reads the rows where the function is 1, and groups them by their count of 1's
+        // for merging if asked to
+        long rowCount = aTT.getRowCount();
+        long wordCount = aTT.getWordCount();
+        boolean hasOnes = false, hasZeros = false;
+        long word, rowsMask;
+
+        for (long i = 0; i < wordCount && !(hasOnes && hasZeros); i++) {
+            word = aTT.getWord(i);
+            rowsMask = (i == wordCount - 1 && (rowCount & 63) != 0) ? (1L << (rowCount & 63)) - 1 : -1L;
+            hasOnes |= word != 0;
+            hasZeros |= word != rowsMask;
+        }
+
+        if (!hasOnes || !hasZeros) { // All outputs are the same, such as for A*!A or A+!A
+            this.isConst = true;
+            this.constVal = hasOnes;
+            return;
+        }
+
         QMItem anItem;
-        boolean isConst = true;
-        int previousOutput = -1;
-
-        for (int i = 0; i < aTT.length; i++) {
-            if (aTT[i][this.groups.length - 1]) {
-                if (isConst && previousOutput == 0) // Outputs have differed, can't be constant
-                    isConst = false;
-                previousOutput = 1;
-                anItem = new QMItem(aTT[i]);
-                this.groups[anItem.getOneCount()].add(anItem);
-            } else {
-                if (isConst && previousOutput == 1) // Outputs have differed, can't be constant
-                    isConst = false;
-                previousOutput = 0;
+        int varCount = this.groups.length - 1;
+        for (long i = 0; i < wordCount; i++) {
+            word = aTT.getWord(i);
+            for (int s = 0; s < 64 && word != 0; s++) {
+                if ((word & (1L << s)) != 0) {
+                    if (grouped) {
+                        anItem = new QMItem((i << 6) | s, varCount);
+                        this.groups[anItem.getOneCount()].add(anItem);
+                    }
+                    this.addMinterm((i << 6) | s);
+                    word &= ~(1L << s);
+                }
             }
         }
+    }
 
-        if (isConst) {
+    /**
+     * Sets the function from the rows where it's 1 and the rows where its value
+     * doesn't matter, without building its truth table. The don't cares are merged
+     * like the other rows but don't have to be covered, so the work depends on the
+     * number of rows given rather than on the number of variables.
+     *
+     * @param onSet the rows where the function is 1, bit i of a row being the value of variable i
+     * @param dcSet the rows where the value of the function doesn't matter, or null
+     * @throws IllegalArgumentException if a row is out of range, or if there are more than 63 variables
+     */
+    public void setMinterms(long[] onSet, long[] dcSet) {
+        this.primes = null;
+        int varCount = this.groups.length - 1;
+        if (varCount > 63)
+            throw new IllegalArgumentException("Minterms can only be given for up to 63 variables");
+
+        long[] on = sortedRows(onSet, onSet, varCount);
+        long[] all = dcSet == null ? on : sortedRows(onSet, dcSet, varCount);
+
+        if (on.length == 0 || (varCount < 31 && all.length == 1 << varCount)) {
+            // The don't cares can all be taken as 0, or as 1 when they fill the table
             this.isConst = true;
-            this.constVal = (previousOutput == 1);
+            this.constVal = on.length != 0;
+            return;
+        }
+
+        QMItem anItem;
+        for (int i = 0; i < all.length; i++) {
+            anItem = new QMItem(all[i], varCount);
+            this.groups[anItem.getOneCount()].add(anItem);
+        }
+
+        this.minterms = on;
+        this.mintermCount = on.length;
+    }
+
+    private static long[] sortedRows(long[] a, long[] b, int varCount) {
+        // The rows of both arrays, sorted and without duplicates
+        long[] rows = new long[a == b ? a.length : a.length + b.length];
+        System.arraycopy(a, 0, rows, 0, a.length);
+        if (a != b)
+            System.arraycopy(b, 0, rows, a.length, b.length);
+        Arrays.sort(rows);
+
+        int count = 0;
+        for (int i = 0; i < rows.length; i++) {
+            if ((rows[i] >>> varCount) != 0)
+                throw new IllegalArgumentException("Row " + rows[i] + " is out of range for " + varCount + " variables");
+            if (count == 0 || rows[count - 1] != rows[i])
+                rows[count++] = rows[i];
+        }
+
+        long[] unique = new long[count];
+        System.arraycopy(rows, 0, unique, 0, count);
+        return unique;
+    }
+
+    private void addMinterm(long minterm) {
+        if (this.mintermCount == this.minterms.length) {
+            long[] grown = new long[this.minterms.length * 2];
+            System.arraycopy(this.minterms, 0, grown, 0, this.mintermCount);
+            this.minterms = grown;
         }
+        this.minterms[this.mintermCount++] = minterm;
     }
 
     public String reduce(ArrayList varNames) {
+        return this.reduce(varNames, TruthTable.REDUCE_GREEDY);
+    }
+
+    /**
+     * Reduces the function to a sum of products
+     *
+     * @param varNames the names of the variables
+     * @param method   how the primes are picked, TruthTable.REDUCE_GREEDY or TruthTable.REDUCE_EXACT
+     * @return the sum of products, or TRUE or FALSE for constant functions
+     */
+    public String reduce(ArrayList varNames, int method) {
+        return formatCover(this.reduceCover(method), varNames);
+    }
+
+    /**
+     * Picks the primes covering the function
+     *
+     * @param method TruthTable.REDUCE_GREEDY or TruthTable.REDUCE_EXACT
+     * @return the picked primes, empty for FALSE and the single term without
+     *         variables for TRUE
+     */
+    public QMGroup reduceCover(int method) {
+        QMGroup cover = new QMGroup();
+        if (this.isConst) {
+            if (this.constVal)
+                cover.add(new QMItem(0, 0));
+            return cover;
+        }
+
+        CoverTable aTable = new CoverTable(this.getPrimes(), this.minterms, this.mintermCount, this.groups.length - 1);
+        if (this.cover_nodes >= 0)
+            aTable.setBudget(this.cover_nodes, this.cover_millis);
+        cover = aTable.reduce(method);
+        this.cover_optimal = aTable.isOptimal();
+        return cover;
+    }
+
+    /**
+     * Finds the prime implicants of the function, by merging the items of adjacent
+     * groups until none merge. It's only done once.
+     *
+     * @return the primes, empty for constant functions
+     */
+    public QMGroup getPrimes() {
+        if (this.primes != null)
+            return this.primes;
+
+        QMGroup reducedGroup = new QMGroup();
+        this.primes = new QMGroup();
         if (this.isConst)
-            return (this.constVal ? "TRUE" : "FALSE");
+            return this.primes;
 
-        QMGroup reducedGroup = new QMGroup(),
-                minimalGroup = new QMGroup();
+        this.pairs_tested = 0;
+        this.pairs_skipped = 0;
+        this.merges = 0;
 
+        long pairs;
         do {
             reducedGroup.clear();
             for (int i = 0; i < this.groups.length - 1; i++) {
-                this.groups[i].reduceWith(this.groups[i + 1], reducedGroup);
+                pairs = this.groups[i].countPairs(this.groups[i + 1]);
+                this.pairs_tested += pairs;
+                this.pairs_skipped += (long) this.groups[i].size() * this.groups[i + 1].size() - pairs;
+            }
+
+            if (this.parallelism > 1) {
+                this.merges += new QMCombiner(this.groups).combine(this.parallelism, reducedGroup);
+            } else {
+                for (int i = 0; i < this.groups.length - 1; i++) {
+                    this.merges += this.groups[i].reduceWith(this.groups[i + 1], reducedGroup);
+                }
             }
 
             for (int i = 0; i < this.groups.length; i++) {
                 for (int s = 0; s < this.groups[i].size(); s++) {
                     if (!this.groups[i].get(s).isUsed())
-                        minimalGroup.add(this.groups[i].get(s));
+                        this.primes.add(this.groups[i].get(s));
                 }
                 this.groups[i].clear();
             }
@@ -92,41 +268,125 @@ class QMReducer {
             }
         } while (reducedGroup.size() != 0);
 
-        QMGroup reducedExpr = new CoverTable(minimalGroup).reduce();
+        return this.primes;
+    }
+
+    /**
+     * Sets the number of threads merging the items of adjacent groups. The
+     * reduced expression doesn't depend on it.
+     *
+     * @param threadCount the number of threads, 1 to merge on the calling thread only
+     */
+    public void setParallelism(int threadCount) {
+        if (threadCount < 1)
+            throw new IllegalArgumentException("At least one thread is needed");
+        this.parallelism = threadCount;
+    }
 
-        int[] aRow;
-        String aLine = "", aTerm;
-        for (int i = 0; i < reducedExpr.size(); i++) {
-            aRow = reducedExpr.get(i).getRow();
-            aTerm = "";
-            for (int s = 0; s < aRow.length; s++) {
-                if (aRow[s] != -1) {
-                    if (aTerm.length() != 0)
-                        aTerm += "*";
+    public int getParallelism() {
+        return this.parallelism;
+    }
 
-                    aTerm += aRow[s] == 1 ? (String) varNames.get(s) : "!" + (String) varNames.get(s);
-                }
-            }
+    /**
+     * Sets the limits of the exact cover search
+     *
+     * @see CoverTable#setBudget(long, long)
+     */
+    public void setCoverBudget(long maxNodes, long maxMillis) {
+        this.cover_nodes = maxNodes;
+        this.cover_millis = maxMillis;
+    }
+
+    /**
+     * @return false if the last exact reduction ran out of budget, its cover may then not be minimal
+     */
+    public boolean isCoverOptimal() {
+        return this.cover_optimal;
+    }
 
+    public boolean isConst() {
+        return this.isConst;
+    }
+
+    public boolean getConstVal() {
+        return this.constVal;
+    }
+
+    public long getPairsTested() {
+        return this.pairs_tested;
+    }
+
+    public long getPairsSkipped() {
+        return this.pairs_skipped;
+    }
+
+    public long getMerges() {
+        return this.merges;
+    }
+
+    /**
+     * Formats a sum of products such as A*!C + B
+     *
+     * @param cover    the terms, empty for FALSE and the single term without
+     *                 variables for TRUE
+     * @param varNames the names of the variables
+     * @return the sum of products, or TRUE or FALSE
+     */
+    static String formatCover(QMGroup cover, ArrayList varNames) {
+        if (cover.size() == 0)
+            return "FALSE";
+        if (cover.size() == 1 && cover.get(0).getCare() == 0)
+            return "TRUE";
+
+        StringBuffer aLine = new StringBuffer();
+        QMItem anItem;
+        for (int i = 0; i < cover.size(); i++) {
+            anItem = cover.get(i);
             if (aLine.length() != 0)
-                aLine += " + ";
-            aLine += aTerm;
+                aLine.append(" + ");
+            aLine.append(formatTerm(anItem.getCare(), anItem.getValue(), varNames));
         }
+        return aLine.toString();
+    }
 
-        return aLine;
+    /**
+     * Formats a product term such as A*!C
+     *
+     * @param care     bit i is set if variable i is part of the term
+     * @param value    bit i is the value of variable i in the term
+     * @param varNames the names of the variables
+     * @return the term, its variables in the order of varNames
+     */
+    static String formatTerm(long care, long value, ArrayList varNames) {
+        StringBuffer aTerm = new StringBuffer();
+        for (int i = 0; i < varNames.size(); i++) {
+            if (((care >>> i) & 1) != 0) {
+                if (aTerm.length() != 0)
+                    aTerm.append('*');
+                if (((value >>> i) & 1) == 0)
+                    aTerm.append('!');
+                aTerm.append((String) varNames.get(i));
+            }
+        }
+        return aTerm.toString();
     }
 }
 
 class QMGroup {
-    private ArrayList aList = new ArrayList();
+    private ArrayList aList = new ArrayList(); // The items, in the order they were added
+    private Hashtable index = new Hashtable(); // Key and Value: the same item, used to skip duplicates
+    private Hashtable buckets = new Hashtable(); // Key: care mask as a Long, Value: the items with that mask, in order
 
     QMGroup() {
 
     }
 
     public void add(QMItem anItem) {
-        if (!aList.contains(anItem))
-            aList.add(anItem);
+        if (!this.index.containsKey(anItem)) {
+            this.index.put(anItem, anItem);
+            this.aList.add(anItem);
+            this.getBucket(anItem.getCare(), true).add(anItem);
+        }
     }
 
     public QMItem get(int index) {
@@ -139,6 +399,35 @@ class QMGroup {
 
     public void clear() {
         this.aList.clear();
+        this.index.clear();
+        this.buckets.clear();
+    }
+
+    private ArrayList getBucket(long care, boolean create) {
+        Long key = new Long(care);
+        ArrayList bucket = (ArrayList) this.buckets.get(key);
+        if (bucket == null && create) {
+            bucket = new ArrayList();
+            this.buckets.put(key, bucket);
+        }
+        return bucket;
+    }
+
+    /**
+     * Copies the buckets of the group to a table that isn't synchronized, so the
+     * threads merging with the group don't all wait on the lock of the Hashtable.
+     * The table doesn't follow later changes to the group.
+     *
+     * @return the buckets, by care mask
+     */
+    public QMBuckets getBuckets() {
+        QMBuckets aTable = new QMBuckets(this.buckets.size());
+        Enumeration keys = this.buckets.keys();
+        while (keys.hasMoreElements()) {
+            Long care = (Long) keys.nextElement();
+            aTable.put(care.longValue(), (ArrayList) this.buckets.get(care));
+        }
+        return aTable;
     }
 
     public boolean equals(Object o) {
@@ -158,57 +447,257 @@ class QMGroup {
     public Object clone() throws CloneNotSupportedException {
         QMGroup qmGroup = (QMGroup) super.clone();
         qmGroup.aList = (ArrayList) this.aList.clone();
+        qmGroup.index = (Hashtable) this.index.clone();
+        qmGroup.buckets = new Hashtable();
+        for (int i = 0; i < this.aList.size(); i++) {
+            qmGroup.getBucket(this.get(i).getCare(), true).add(this.get(i));
+        }
         return qmGroup;
     }
 
-    public void reduceWith(QMGroup aGroup, QMGroup reducedGroup) {
-        for (int i = 0; i < this.size(); i++) {
-            for (int s = 0; s < aGroup.size(); s++) {
-                this.get(i).reduceWith(aGroup.get(s), reducedGroup);
+    /**
+     * @param aGroup the group of items with one more 1
+     * @return the number of pairs of items with the same don't cares in both groups
+     */
+    public long countPairs(QMGroup aGroup) {
+        long pairs = 0;
+        ArrayList bucket, aBucket;
+        Enumeration keys = this.buckets.keys();
+        while (keys.hasMoreElements()) {
+            Long care = (Long) keys.nextElement();
+            bucket = (ArrayList) this.buckets.get(care);
+            aBucket = (ArrayList) aGroup.buckets.get(care);
+            if (aBucket != null)
+                pairs += (long) bucket.size() * aBucket.size();
+        }
+        return pairs;
+    }
+
+    /**
+     * Merges the items of this group with the ones of aGroup. Only items with the
+     * same don't cares can merge, so every item is only compared with the bucket
+     * of aGroup holding its mask. The merged items are added to reducedGroup in the
+     * same order as if all pairs were compared.
+     *
+     * @param aGroup       the group of items with one more 1
+     * @param reducedGroup where the merged items are added
+     * @return the number of merges
+     */
+    public int reduceWith(QMGroup aGroup, QMGroup reducedGroup) {
+        return this.reduceWith(aGroup.getBuckets(), reducedGroup, 0, this.size());
+    }
+
+    /**
+     * Merges the items from index from to index to - 1 of this group with the ones of
+     * the group the buckets were taken from
+     *
+     * @param aBuckets the buckets of the group of items with one more 1, from getBuckets()
+     * @see #reduceWith(QMGroup, QMGroup)
+     */
+    public int reduceWith(QMBuckets aBuckets, QMGroup reducedGroup, int from, int to) {
+        int merges = 0;
+        QMItem anItem;
+        ArrayList aBucket;
+        for (int i = from; i < to; i++) {
+            anItem = this.get(i);
+            aBucket = aBuckets.get(anItem.getCare());
+            if (aBucket == null)
+                continue;
+
+            for (int s = 0; s < aBucket.size(); s++) {
+                if (anItem.reduceWith((QMItem) aBucket.get(s), reducedGroup))
+                    merges++;
             }
         }
+        return merges;
     }
 }
 
-class QMItem {
-    private final int[] row; // An entry in row is 0, 1 or -1 if it's a don't care
-    private int oneCount = 0;
-    private boolean used = false;
-    public ArrayList coveredRows = new ArrayList();
+class QMBuckets {
+    // The buckets of a group by care mask, read by all the threads of a QMCombiner
+    private final LongIntMap slots; // Key: care mask, Value: index in lists
+    private final ArrayList[] lists;
+    private int count = 0;
+
+    QMBuckets(int bucketCount) {
+        this.slots = new LongIntMap(bucketCount);
+        this.lists = new ArrayList[bucketCount];
+    }
 
-    QMItem(boolean[] aRow) {
-        int rowIndex = 0;
+    void put(long care, ArrayList bucket) {
+        this.slots.put(care, this.count);
+        this.lists[this.count++] = bucket;
+    }
 
-        this.row = new int[aRow.length - 1];
+    /**
+     * @param care a care mask
+     * @return the items with that mask, or null if there are none
+     */
+    public ArrayList get(long care) {
+        int slot = this.slots.get(care, -1);
+        return slot == -1 ? null : this.lists[slot];
+    }
+}
 
-        for (int i = 0; i < this.row.length; i++) {
-            if (aRow[i]) {
-                this.oneCount++;
-                this.row[i] = 1;
-                rowIndex += (int) Math.pow(2.0, this.row.length - 1 - i);
-            } else {
-                this.row[i] = 0;
+class QMCombiner implements Runnable {
+    // Runs the combine step of a pass on several threads. Every pair of adjacent
+    // groups is cut into tasks of up to CHUNK_SIZE items of the lower group, and
+    // every task adds its merged items to a buffer of its own. The buffers are then
+    // added to the reduced group in task order, which gives the same items in the
+    // same order as merging the groups one after the other.
+    private static final int CHUNK_SIZE = 256;
+
+    private final QMGroup[] groups;
+    private final QMBuckets[] buckets; // The buckets of every group, taken before the threads start
+    private final int[] taskGroup; // The index of the lower group of every task
+    private final int[] taskFrom;
+    private final int[] taskTo;
+    private final QMGroup[] buffers;
+    private final int[] taskMerges;
+    private final int taskCount;
+    private int nextTask = 0;
+    private Throwable failure = null;
+
+    QMCombiner(QMGroup[] groups) {
+        int count = 0, size;
+        this.groups = groups;
+        this.buckets = new QMBuckets[groups.length];
+
+        for (int i = 0; i < groups.length - 1; i++) {
+            if (groups[i + 1].size() != 0)
+                count += (groups[i].size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        }
+
+        this.taskCount = count;
+        this.taskGroup = new int[count];
+        this.taskFrom = new int[count];
+        this.taskTo = new int[count];
+        this.buffers = new QMGroup[count];
+        this.taskMerges = new int[count];
+
+        count = 0;
+        for (int i = 0; i < groups.length - 1; i++) {
+            if (groups[i + 1].size() == 0)
+                continue;
+
+            this.buckets[i + 1] = groups[i + 1].getBuckets();
+            size = groups[i].size();
+            for (int from = 0; from < size; from += CHUNK_SIZE) {
+                this.taskGroup[count] = i;
+                this.taskFrom[count] = from;
+                this.taskTo[count] = Math.min(from + CHUNK_SIZE, size);
+                count++;
             }
         }
+    }
+
+    /**
+     * Merges the items of all adjacent groups
+     *
+     * @param threadCount  the number of threads to use, including the calling one
+     * @param reducedGroup where the merged items are added
+     * @return the number of merges
+     */
+    public int combine(int threadCount, QMGroup reducedGroup) {
+        Thread[] threads = new Thread[Math.max(0, Math.min(threadCount, this.taskCount) - 1)];
+        boolean interrupted = false;
+
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(this, "QMCombiner-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+
+        this.run();
 
-        this.coveredRows.add(new Integer(rowIndex));
+        for (int i = 0; i < threads.length; i++) {
+            while (threads[i].isAlive()) {
+                try {
+                    threads[i].join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+
+        if (this.failure instanceof RuntimeException)
+            throw (RuntimeException) this.failure;
+        if (this.failure instanceof Error)
+            throw (Error) this.failure;
+
+        int merges = 0;
+        for (int i = 0; i < this.taskCount; i++) {
+            for (int s = 0; s < this.buffers[i].size(); s++) {
+                reducedGroup.add(this.buffers[i].get(s));
+            }
+            merges += this.taskMerges[i];
+        }
+        return merges;
     }
 
-    private QMItem(QMItem anItem) {
-        // Must not restore the "used" var.
-        this.coveredRows = (ArrayList) anItem.coveredRows.clone();
-        this.row = new int[anItem.row.length];
-        for (int i = 0; i < this.row.length; i++) {
-            this.row[i] = anItem.row[i];
-            if (this.row[i] == 1)
-                this.oneCount++;
+    public void run() {
+        int task, group;
+        QMGroup buffer;
+        try {
+            while ((task = this.takeTask()) != -1) {
+                group = this.taskGroup[task];
+                buffer = new QMGroup();
+                this.taskMerges[task] = this.groups[group].reduceWith(this.buckets[group + 1], buffer, this.taskFrom[task], this.taskTo[task]);
+                this.buffers[task] = buffer;
+            }
+        } catch (RuntimeException e) {
+            this.fail(e);
+        } catch (Error e) {
+            this.fail(e);
         }
     }
 
+    private synchronized int takeTask() {
+        if (this.failure != null || this.nextTask == this.taskCount)
+            return -1;
+        return this.nextTask++;
+    }
+
+    private synchronized void fail(Throwable t) {
+        if (this.failure == null)
+            this.failure = t;
+    }
+}
+
+class QMItem {
+    // A product term, or cube. Variables that aren't part of it are the don't cares,
+    // the rows it covers are the ones matching value on the variables of care.
+    private final long care; // Bit i is set if variable i is part of the term
+    private final long value; // Bit i is the value of variable i, always 0 for don't cares
+    private final int oneCount;
+    private boolean used = false;
+
+    QMItem(long minterm, int varCount) {
+        // Creates the item of a single row of the truth table, bit i of minterm being the value of variable i
+        this(varCount == 64 ? -1L : (1L << varCount) - 1, minterm);
+    }
+
+    QMItem(long care, long value) {
+        // Must not restore the "used" var.
+        this.care = care;
+        this.value = value;
+        this.oneCount = Bits.bitCount(value);
+    }
+
     public int getOneCount() {
         return this.oneCount;
     }
 
+    public long getCare() {
+        return this.care;
+    }
+
+    public long getValue() {
+        return this.value;
+    }
+
     public boolean isUsed() {
         return this.used;
     }
@@ -223,45 +712,27 @@ class QMItem {
 
         QMItem qmItem = (QMItem) o;
 
-        return Arrays.equals(row, qmItem.row);
-
+        return this.care == qmItem.care && this.value == qmItem.value;
     }
 
-    public void reduceWith(QMItem anItem, QMGroup reducedGroup) {
-        int diffColumn = -1;
-        for (int i = 0; i < this.row.length; i++) {
-            if (this.row[i] < 0 && anItem.row[i] >= 0)
-                return;
+    public int hashCode() {
+        long h = this.care * 31 + this.value;
+        return (int) (h ^ (h >>> 32));
+    }
 
-            if (this.row[i] != anItem.row[i]) {
-                if (diffColumn != -1) // There's more than one column different
-                    return;
-                diffColumn = i;
-            }
-        }
+    public boolean reduceWith(QMItem anItem, QMGroup reducedGroup) {
+        // The items merge if they have the same don't cares and differ in a single variable
+        if (this.care != anItem.care)
+            return false;
 
-        if (diffColumn == -1)
-            return;
+        long diff = this.value ^ anItem.value;
+        if (Bits.bitCount(diff) != 1)
+            return false;
 
-        QMItem changedItem = new QMItem(anItem);
-        changedItem.row[diffColumn] = -1;
-        reducedGroup.add(changedItem);
-
-        this.copyCoveredRows(changedItem); // Copy the covered rows over to the new QMItem
-        // anItem.copyCoveredRows(changedItem); NOT Required since we instantiate QMItem from anItem
+        reducedGroup.add(new QMItem(this.care & ~diff, this.value & ~diff));
 
         anItem.setUsed();
         this.setUsed();
+        return true;
     }
-
-    private void copyCoveredRows(QMItem to) {
-        for (int i = 0; i < this.coveredRows.size(); i++) {
-            if (!to.coveredRows.contains(this.coveredRows.get(i)))
-                to.coveredRows.add(this.coveredRows.get(i));
-        }
-    }
-
-    public int[] getRow() {
-        return this.row;
-    }
-}
\ No newline at end of file
+}
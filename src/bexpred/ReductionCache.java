@@ -0,0 +1,315 @@
+package bexpred;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Hashtable;
+
+/*
+ * BExpred - Boolean Expression Reducer
+ * Goal: To reduce specified boolean expressions
+ * Current state: Evaluates a given expression with input values
+ * Copyright (c) 2003 Benjamin Biron
+ * License: GPL
+
+    This file is part of BExpred.
+
+    BExpred is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    BExpred is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with BExpred; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+ */
+
+class ReductionCache {
+    // Remembers the reductions of truth tables, so the same function isn't reduced
+    // twice, whether it's typed again in the GUI, reduced by another caller, or is
+    // the inverse of one reduced for a product of sums. The entries are keyed by a
+    // SHA-1 digest of the variable count and the output column, and the least
+    // recently used entry of a stripe is dropped when it's full. The entries are
+    // split in stripes by key, each with its own lock, so threads reducing different
+    // functions don't wait on each other.
+
+    // The slots of an entry. The covers of each reduction method are kept apart, as
+    // they can differ.
+    static final int SOP = 0; // Plus the method, the cover of the function
+    static final int POS = 3; // Plus the method, the cover of the inverse of the function
+    static final int PRIMES = 6; // All the prime implicants, the same for every method
+    private static final int SLOTS = 7;
+
+    private static final int STRIPES = 16;
+    private static final int MAX_CUBES = 1 << 16; // Bigger covers aren't kept, they'd crowd out the rest
+    private static final int DEFAULT_ENTRIES = Integer.getInteger("turaco.cache.entries", 256).intValue();
+
+    private static ReductionCache shared;
+
+    private CacheStripe[] stripes = new CacheStripe[STRIPES];
+
+    ReductionCache(int maxEntries) {
+        int perStripe = (maxEntries + STRIPES - 1) / STRIPES;
+        for (int i = 0; i < STRIPES; i++) {
+            this.stripes[i] = new CacheStripe(perStripe);
+        }
+    }
+
+    /**
+     * @return the cache shared by every caller, holding up to turaco.cache.entries
+     *         entries, 256 by default, none if 0
+     */
+    public static synchronized ReductionCache getShared() {
+        if (shared == null)
+            shared = new ReductionCache(Math.max(DEFAULT_ENTRIES, 0));
+        return shared;
+    }
+
+    /**
+     * Finds the key of a truth table, reading its whole output column
+     *
+     * @param aTT the truth table
+     * @return the key of the entry of the function of the table
+     */
+    static Object keyOf(TruthTable aTT) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 isn't available: " + e.getMessage());
+        }
+
+        byte[] buffer = new byte[8 * 512];
+        int varCount = aTT.getVarCount(), pos = 0;
+        for (int b = 0; b < 4; b++) {
+            buffer[pos++] = (byte) (varCount >>> (b << 3));
+        }
+        digest.update(buffer, 0, pos);
+
+        long wordCount = aTT.getWordCount(), word;
+        pos = 0;
+        for (long i = 0; i < wordCount; i++) {
+            word = aTT.getWord(i);
+            for (int b = 0; b < 8; b++) {
+                buffer[pos++] = (byte) (word >>> (b << 3));
+            }
+            if (pos == buffer.length) {
+                digest.update(buffer, 0, pos);
+                pos = 0;
+            }
+        }
+        digest.update(buffer, 0, pos);
+
+        return new CacheKey(digest.digest());
+    }
+
+    /**
+     * @param key  the key found with keyOf()
+     * @param slot SOP or POS plus the reduction method, or PRIMES
+     * @return a copy of the cubes of the slot, or null if they aren't cached
+     */
+    public QMGroup get(Object key, int slot) {
+        long[] cubes = this.stripeOf(key).get((CacheKey) key, slot);
+        if (cubes == null)
+            return null;
+
+        QMGroup aGroup = new QMGroup();
+        for (int i = 0; i < cubes.length; i += 2) {
+            aGroup.add(new QMItem(cubes[i], cubes[i + 1]));
+        }
+        return aGroup;
+    }
+
+    /**
+     * Caches the cubes of a slot, unless there are too many of them
+     *
+     * @param key   the key found with keyOf()
+     * @param slot  SOP or POS plus the reduction method, or PRIMES
+     * @param cubes the cubes, copied
+     */
+    public void put(Object key, int slot, QMGroup cubes) {
+        if (cubes.size() > MAX_CUBES)
+            return;
+
+        long[] packed = new long[cubes.size() * 2];
+        for (int i = 0; i < cubes.size(); i++) {
+            packed[i * 2] = cubes.get(i).getCare();
+            packed[i * 2 + 1] = cubes.get(i).getValue();
+        }
+        this.stripeOf(key).put((CacheKey) key, slot, packed);
+    }
+
+    private CacheStripe stripeOf(Object key) {
+        return this.stripes[(key.hashCode() & 0x7fffffff) % STRIPES];
+    }
+
+    /**
+     * Drops every entry, keeping the counters
+     */
+    public void clear() {
+        for (int i = 0; i < STRIPES; i++) {
+            this.stripes[i].clear();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            size += this.stripes[i].size();
+        }
+        return size;
+    }
+
+    /**
+     * @return the number of calls to get() that found their slot
+     */
+    public long getHits() {
+        long hits = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            hits += this.stripes[i].getHits();
+        }
+        return hits;
+    }
+
+    /**
+     * @return the number of calls to get() that didn't find their slot
+     */
+    public long getMisses() {
+        long misses = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            misses += this.stripes[i].getMisses();
+        }
+        return misses;
+    }
+
+    /**
+     * @return the number of entries dropped to make room for others
+     */
+    public long getEvictions() {
+        long evictions = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            evictions += this.stripes[i].getEvictions();
+        }
+        return evictions;
+    }
+
+    static final class CacheKey {
+        private byte[] digest;
+        private int hash;
+
+        CacheKey(byte[] digest) {
+            this.digest = digest;
+            this.hash = (digest[0] & 0xff) | (digest[1] & 0xff) << 8 | (digest[2] & 0xff) << 16 | digest[3] << 24;
+        }
+
+        byte[] getDigest() {
+            return this.digest;
+        }
+
+        public boolean equals(Object o) {
+            return o instanceof CacheKey && Arrays.equals(this.digest, ((CacheKey) o).digest);
+        }
+
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+
+    private static final class CacheEntry {
+        CacheKey key;
+        long[][] slots = new long[SLOTS][];
+        CacheEntry prev, next; // In order of use, the most recent after the head
+    }
+
+    private static final class CacheStripe {
+        // A part of the cache, with its own lock. The entries are in a list in order of
+        // use, so the least recently used one is the one before the head.
+        private Hashtable entries = new Hashtable();
+        private CacheEntry head = new CacheEntry();
+        private int maxEntries;
+        private long hits = 0;
+        private long misses = 0;
+        private long evictions = 0;
+
+        CacheStripe(int maxEntries) {
+            this.maxEntries = maxEntries;
+            this.head.prev = this.head;
+            this.head.next = this.head;
+        }
+
+        synchronized long[] get(CacheKey key, int slot) {
+            CacheEntry anEntry = (CacheEntry) this.entries.get(key);
+            if (anEntry == null || anEntry.slots[slot] == null) {
+                this.misses++;
+                return null;
+            }
+
+            this.hits++;
+            this.unlink(anEntry);
+            this.linkFirst(anEntry);
+            return anEntry.slots[slot];
+        }
+
+        synchronized void put(CacheKey key, int slot, long[] cubes) {
+            if (this.maxEntries == 0)
+                return;
+
+            CacheEntry anEntry = (CacheEntry) this.entries.get(key);
+            if (anEntry != null) {
+                this.unlink(anEntry);
+            } else {
+                if (this.entries.size() >= this.maxEntries) {
+                    CacheEntry last = this.head.prev;
+                    this.unlink(last);
+                    this.entries.remove(last.key);
+                    this.evictions++;
+                }
+                anEntry = new CacheEntry();
+                anEntry.key = key;
+                this.entries.put(key, anEntry);
+            }
+            anEntry.slots[slot] = cubes;
+            this.linkFirst(anEntry);
+        }
+
+        synchronized void clear() {
+            this.entries.clear();
+            this.head.prev = this.head;
+            this.head.next = this.head;
+        }
+
+        synchronized int size() {
+            return this.entries.size();
+        }
+
+        synchronized long getHits() {
+            return this.hits;
+        }
+
+        synchronized long getMisses() {
+            return this.misses;
+        }
+
+        synchronized long getEvictions() {
+            return this.evictions;
+        }
+
+        private void unlink(CacheEntry anEntry) {
+            anEntry.prev.next = anEntry.next;
+            anEntry.next.prev = anEntry.prev;
+        }
+
+        private void linkFirst(CacheEntry anEntry) {
+            anEntry.prev = this.head;
+            anEntry.next = this.head.next;
+            this.head.next.prev = anEntry;
+            this.head.next = anEntry;
+        }
+    }
+}
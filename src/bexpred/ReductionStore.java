@@ -0,0 +1,583 @@
+package bexpred;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/*
+ * BExpred - Boolean Expression Reducer
+ * Goal: To reduce specified boolean expressions
+ * Current state: Evaluates a given expression with input values
+ * Copyright (c) 2003 Benjamin Biron
+ * License: GPL
+
+    This file is part of BExpred.
+
+    BExpred is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    BExpred is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with BExpred; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+ */
+
+class ReductionStore {
+    // Keeps the reductions of the ReductionCache in a directory, so they outlive the
+    // process. The records are appended to a log, and found through an index file
+    // holding an open addressing hash table of their offsets. The log starts with
+    //       int magic
+    //       int reserved
+    // followed by the records
+    //       int payload length
+    //       byte[20] SHA-1 digest of the function, from ReductionCache.keyOf()
+    //       int slot, ReductionCache.SOP, POS or PRIMES
+    //       int cube count
+    //       long care, long value, for each cube
+    //       int CRC-32 of the payload
+    // A record torn by a crash fails its CRC and is cut off when the store is opened
+    // again. The index starts with
+    //       int magic
+    //       int capacity
+    //       int count
+    //       int reserved
+    //       long length of the log covered by the index
+    //       long bytes of the log taken by replaced records
+    // followed by the entries, a long hash of the key (0 if empty) and a long offset
+    // of the record. The index is read whole when the store is opened, probed in
+    // memory, and its changed blocks are written back every few puts and on close,
+    // before its header. The records past the length in the header are indexed again
+    // when the store is opened, and the records are read back and checked before
+    // being used, so entries lost or torn by a crash are only misses. Once the log
+    // would grow past its limit, the live records are copied to a new one, the oldest
+    // dropped first until it's half full.
+    private static final int LOG_MAGIC = 0x54525331; // "TRS1"
+    private static final int INDEX_MAGIC = 0x54524931; // "TRI1"
+    private static final int LOG_HEADER = 8;
+    private static final int INDEX_HEADER = 32;
+    private static final int ENTRY_SIZE = 16;
+    private static final int DIGEST_SIZE = 20;
+    private static final int RECORD_OVERHEAD = 4 + DIGEST_SIZE + 4 + 4 + 4; // Length, digest, slot, count and CRC
+    private static final int MIN_CAPACITY = 1024;
+    private static final int BLOCK_ENTRIES = 512; // The entries written back together, 8 KB
+    private static final int FLUSH_PUTS = 64; // Puts between writes of the index
+    private static final long DEFAULT_BYTES = Long.getLong("turaco.store.bytes", 64L << 20).longValue();
+
+    private static ReductionStore shared;
+    private static boolean sharedOpened = false;
+
+    private final File log_file;
+    private final File index_file;
+    private final File temp_file; // The new log, while compacting
+    private final long max_bytes;
+    private RandomAccessFile log;
+    private RandomAccessFile index;
+    private long log_length; // The end of the last valid record
+    private long dead_bytes; // Taken by records replaced by later ones
+    private int capacity;
+    private int count;
+    private long[] hashes; // The entries of the index, 0 if empty
+    private long[] offsets;
+    private boolean[] dirty; // The blocks of entries changed since the index was written
+    private int unflushed = 0; // Puts since the index was written
+
+    private ReductionStore(File dir, long maxBytes) {
+        this.log_file = new File(dir, "reductions.log");
+        this.index_file = new File(dir, "reductions.idx");
+        this.temp_file = new File(dir, "reductions.log.tmp");
+        this.max_bytes = maxBytes;
+    }
+
+    /**
+     * @return the store in the directory set with turaco.store.dir, of up to
+     *         turaco.store.bytes bytes, 64 MB by default, or null if there is none
+     */
+    public static synchronized ReductionStore getShared() {
+        if (!sharedOpened) {
+            sharedOpened = true;
+            String dir = System.getProperty("turaco.store.dir");
+            if (dir != null) {
+                try {
+                    shared = open(new File(dir), DEFAULT_BYTES);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Opens the store kept in a directory, creating it if needed, and recovers from
+     * a crash of the last process that wrote it
+     *
+     * @param dir      where the files of the store are
+     * @param maxBytes how large the log can grow
+     * @return the store
+     * @throws IOException if the files can't be read or written, or aren't a store
+     */
+    public static ReductionStore open(File dir, long maxBytes) throws IOException {
+        dir.mkdirs();
+        ReductionStore aStore = new ReductionStore(dir, maxBytes);
+        if (aStore.temp_file.exists()) {
+            // A compaction was interrupted. The new log is complete once the old one is gone.
+            if (aStore.log_file.exists())
+                aStore.temp_file.delete();
+            else if (!aStore.temp_file.renameTo(aStore.log_file))
+                throw new IOException("Could not rename " + aStore.temp_file);
+        }
+
+        try {
+            aStore.recover();
+        } catch (IOException e) {
+            aStore.close();
+            throw e;
+        }
+        return aStore;
+    }
+
+    private void recover() throws IOException {
+        this.log = new RandomAccessFile(this.log_file, "rw");
+        if (this.log.length() == 0) {
+            this.log.writeInt(LOG_MAGIC);
+            this.log.writeInt(0);
+        } else if (this.log.length() < LOG_HEADER || this.log.readInt() != LOG_MAGIC) {
+            throw new IOException("Not a reduction store: " + this.log_file);
+        }
+
+        this.index = new RandomAccessFile(this.index_file, "rw");
+        if (this.index.length() >= INDEX_HEADER) {
+            byte[] header = new byte[INDEX_HEADER];
+            this.index.seek(0);
+            this.index.readFully(header);
+            this.capacity = readInt(header, 4);
+            this.count = readInt(header, 8);
+            this.log_length = readLong(header, 16);
+            this.dead_bytes = readLong(header, 24);
+            if (readInt(header, 0) == INDEX_MAGIC && this.capacity >= MIN_CAPACITY && this.capacity % BLOCK_ENTRIES == 0
+                    && this.index.length() == INDEX_HEADER + (long) this.capacity * ENTRY_SIZE
+                    && this.log_length >= LOG_HEADER && this.log_length <= this.log.length()) {
+                this.readIndex();
+                this.scanLog(); // Only the records appended after the index was last written
+                this.flush();
+                return;
+            }
+        }
+        this.rebuildIndex();
+    }
+
+    /**
+     * Finds the cubes of a slot
+     *
+     * @param key  the key found with ReductionCache.keyOf()
+     * @param slot ReductionCache.SOP or POS plus the reduction method, or PRIMES
+     * @return the cubes, or null if they aren't stored
+     */
+    public synchronized QMGroup get(Object key, int slot) {
+        byte[] digest = ((ReductionCache.CacheKey) key).getDigest();
+        long hash = hash(digest, 0, slot), entryHash;
+        byte[] recordDigest = new byte[DIGEST_SIZE];
+        int[] recordSlot = new int[1];
+        long[] cubes;
+
+        try {
+            for (int i = this.entryOf(hash); ; i = (i + 1) % this.capacity) {
+                entryHash = this.hashes[i];
+                if (entryHash == 0)
+                    return null;
+                if (entryHash != hash)
+                    continue;
+
+                cubes = this.readRecord(this.offsets[i], recordDigest, recordSlot);
+                if (cubes != null && recordSlot[0] == slot && Arrays.equals(recordDigest, digest)) {
+                    QMGroup aGroup = new QMGroup();
+                    for (int s = 0; s < cubes.length; s += 2) {
+                        aGroup.add(new QMItem(cubes[s], cubes[s + 1]));
+                    }
+                    return aGroup;
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Appends the cubes of a slot to the log, replacing any stored before. Covers
+     * taking more than a sixteenth of the log limit aren't stored.
+     *
+     * @param key   the key found with ReductionCache.keyOf()
+     * @param slot  ReductionCache.SOP or POS plus the reduction method, or PRIMES
+     * @param cubes the cubes
+     */
+    public synchronized void put(Object key, int slot, QMGroup cubes) {
+        long size = RECORD_OVERHEAD + (long) cubes.size() * 16;
+        if (size > this.max_bytes / 16)
+            return;
+
+        byte[] digest = ((ReductionCache.CacheKey) key).getDigest();
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) size);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt((int) size - 8);
+            out.write(digest);
+            out.writeInt(slot);
+            out.writeInt(cubes.size());
+            for (int i = 0; i < cubes.size(); i++) {
+                out.writeLong(cubes.get(i).getCare());
+                out.writeLong(cubes.get(i).getValue());
+            }
+            byte[] record = bytes.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(record, 4, record.length - 4);
+            out.writeInt((int) crc.getValue());
+            record = bytes.toByteArray();
+
+            if (this.log_length + size > this.max_bytes)
+                this.compact(this.max_bytes / 2 - size);
+            else if (this.dead_bytes > this.log_length / 2 && this.log_length > this.max_bytes / 4)
+                this.compact(this.max_bytes);
+
+            long offset = this.log_length;
+            this.log.seek(offset);
+            this.log.write(record);
+            this.log_length += size;
+            this.insert(hash(digest, 0, slot), offset, digest, slot);
+            if (++this.unflushed >= FLUSH_PUTS)
+                this.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return the number of stored slots
+     */
+    public synchronized int size() {
+        return this.count;
+    }
+
+    /**
+     * @return the length of the log, in bytes
+     */
+    public synchronized long getLogLength() {
+        return this.log_length;
+    }
+
+    public synchronized void close() {
+        try {
+            if (this.index != null) {
+                if (this.hashes != null)
+                    this.flush();
+                this.index.close();
+            }
+            if (this.log != null)
+                this.log.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        this.index = null;
+        this.log = null;
+    }
+
+    private static long hash(byte[] digest, int pos, int slot) {
+        long hash = readLong(digest, pos);
+        hash ^= (slot + 1) * 0x9E3779B97F4A7C15L;
+        return hash == 0 ? 1 : hash;
+    }
+
+    private int entryOf(long hash) {
+        return (int) ((hash >>> 1) % this.capacity);
+    }
+
+    private byte[] readRaw(long offset) throws IOException {
+        // Returns the bytes of the record at the offset, or null if there isn't a whole
+        // record there or its CRC doesn't match
+        if (offset < LOG_HEADER || offset + RECORD_OVERHEAD > this.log_length)
+            return null;
+
+        byte[] lengthBytes = new byte[4];
+        this.log.seek(offset);
+        this.log.readFully(lengthBytes);
+        int length = readInt(lengthBytes, 0);
+        if (length < RECORD_OVERHEAD - 8 || ((length - (RECORD_OVERHEAD - 8)) & 15) != 0 || offset + length + 8 > this.log_length)
+            return null;
+
+        byte[] record = new byte[length + 8];
+        System.arraycopy(lengthBytes, 0, record, 0, 4);
+        this.log.readFully(record, 4, length + 4);
+        CRC32 crc = new CRC32();
+        crc.update(record, 4, length);
+        if (readInt(record, length + 4) != (int) crc.getValue()
+                || readInt(record, 4 + DIGEST_SIZE + 4) * 16L != length - (RECORD_OVERHEAD - 8))
+            return null;
+        return record;
+    }
+
+    private long[] readRecord(long offset, byte[] digest, int[] slot) throws IOException {
+        // Returns the cubes of the record at the offset, or null if it isn't valid
+        byte[] record = this.readRaw(offset);
+        if (record == null)
+            return null;
+
+        System.arraycopy(record, 4, digest, 0, DIGEST_SIZE);
+        slot[0] = readInt(record, 4 + DIGEST_SIZE);
+        long[] cubes = new long[(record.length - RECORD_OVERHEAD) / 8];
+        for (int i = 0; i < cubes.length; i++) {
+            cubes[i] = readLong(record, 4 + DIGEST_SIZE + 8 + i * 8);
+        }
+        return cubes;
+    }
+
+    private static int readInt(byte[] bytes, int pos) {
+        return (bytes[pos] & 0xff) << 24 | (bytes[pos + 1] & 0xff) << 16 | (bytes[pos + 2] & 0xff) << 8 | (bytes[pos + 3] & 0xff);
+    }
+
+    private static long readLong(byte[] bytes, int pos) {
+        return ((long) readInt(bytes, pos) << 32) | (readInt(bytes, pos + 4) & 0xffffffffL);
+    }
+
+    private static void writeInt(byte[] bytes, int pos, int value) {
+        bytes[pos] = (byte) (value >>> 24);
+        bytes[pos + 1] = (byte) (value >>> 16);
+        bytes[pos + 2] = (byte) (value >>> 8);
+        bytes[pos + 3] = (byte) value;
+    }
+
+    private static void writeLong(byte[] bytes, int pos, long value) {
+        writeInt(bytes, pos, (int) (value >>> 32));
+        writeInt(bytes, pos + 4, (int) value);
+    }
+
+    private void scanLog() throws IOException {
+        // Indexes the records past the indexed part of the log, up to the first one
+        // that's torn, and cuts the log there
+        long end = this.log.length(), pos = this.log_length;
+        byte[] digest = new byte[DIGEST_SIZE];
+        int[] slot = new int[1];
+        long[] cubes;
+
+        this.log_length = end;
+        while ((cubes = this.readRecord(pos, digest, slot)) != null) {
+            this.insert(hash(digest, 0, slot[0]), pos, digest, slot[0]);
+            pos += RECORD_OVERHEAD + cubes.length * 8L;
+        }
+        if (pos < end)
+            this.log.setLength(pos);
+        this.log_length = pos;
+    }
+
+    private void rebuildIndex() throws IOException {
+        this.index.setLength(0); // Left invalid until it's written again
+        this.newEntries(MIN_CAPACITY);
+        this.count = 0;
+        this.dead_bytes = 0;
+        this.log_length = LOG_HEADER;
+        this.scanLog();
+        this.flush();
+    }
+
+    private void newEntries(int capacity) {
+        this.capacity = capacity;
+        this.hashes = new long[capacity];
+        this.offsets = new long[capacity];
+        this.dirty = new boolean[capacity / BLOCK_ENTRIES];
+        Arrays.fill(this.dirty, true);
+    }
+
+    private void readIndex() throws IOException {
+        this.hashes = new long[this.capacity];
+        this.offsets = new long[this.capacity];
+        this.dirty = new boolean[this.capacity / BLOCK_ENTRIES];
+
+        byte[] block = new byte[BLOCK_ENTRIES * ENTRY_SIZE];
+        this.index.seek(INDEX_HEADER);
+        for (int b = 0; b < this.dirty.length; b++) {
+            this.index.readFully(block);
+            for (int i = 0; i < BLOCK_ENTRIES; i++) {
+                this.hashes[b * BLOCK_ENTRIES + i] = readLong(block, i * ENTRY_SIZE);
+                this.offsets[b * BLOCK_ENTRIES + i] = readLong(block, i * ENTRY_SIZE + 8);
+            }
+        }
+    }
+
+    private void flush() throws IOException {
+        // Writes the changed blocks of entries, then the header, so the header never
+        // covers records whose entries weren't written
+        long length = INDEX_HEADER + (long) this.capacity * ENTRY_SIZE;
+        if (this.index.length() != length)
+            this.index.setLength(length);
+
+        byte[] block = new byte[BLOCK_ENTRIES * ENTRY_SIZE];
+        for (int b = 0; b < this.dirty.length; b++) {
+            if (!this.dirty[b])
+                continue;
+            for (int i = 0; i < BLOCK_ENTRIES; i++) {
+                writeLong(block, i * ENTRY_SIZE, this.hashes[b * BLOCK_ENTRIES + i]);
+                writeLong(block, i * ENTRY_SIZE + 8, this.offsets[b * BLOCK_ENTRIES + i]);
+            }
+            this.index.seek(INDEX_HEADER + (long) b * block.length);
+            this.index.write(block);
+            this.dirty[b] = false;
+        }
+
+        byte[] header = new byte[INDEX_HEADER];
+        writeInt(header, 0, INDEX_MAGIC);
+        writeInt(header, 4, this.capacity);
+        writeInt(header, 8, this.count);
+        writeLong(header, 16, this.log_length);
+        writeLong(header, 24, this.dead_bytes);
+        this.index.seek(0);
+        this.index.write(header);
+        this.unflushed = 0;
+    }
+
+    private void insert(long hash, long offset, byte[] digest, int slot) throws IOException {
+        // Points the entry of the key at the offset, adding the entry if there's none
+        if ((this.count + 1) * 4L > this.capacity * 3L)
+            this.growIndex();
+
+        long oldOffset;
+        byte[] old = new byte[4 + DIGEST_SIZE + 4];
+        for (int i = this.entryOf(hash); ; i = (i + 1) % this.capacity) {
+            if (this.hashes[i] == 0) {
+                this.hashes[i] = hash;
+                this.offsets[i] = offset;
+                this.dirty[i / BLOCK_ENTRIES] = true;
+                this.count++;
+                return;
+            }
+            if (this.hashes[i] != hash)
+                continue;
+
+            oldOffset = this.offsets[i];
+            if (oldOffset == offset)
+                return; // Indexed before a crash, and scanned again
+            if (oldOffset >= LOG_HEADER && oldOffset + RECORD_OVERHEAD <= this.log_length) {
+                this.log.seek(oldOffset);
+                this.log.readFully(old);
+                if (readInt(old, 4 + DIGEST_SIZE) == slot && equals(old, 4, digest)) {
+                    this.dead_bytes += readInt(old, 0) + 8;
+                    this.offsets[i] = offset;
+                    this.dirty[i / BLOCK_ENTRIES] = true;
+                    return;
+                }
+            }
+        }
+    }
+
+    private static boolean equals(byte[] bytes, int pos, byte[] digest) {
+        for (int i = 0; i < digest.length; i++) {
+            if (bytes[pos + i] != digest[i])
+                return false;
+        }
+        return true;
+    }
+
+    private void growIndex() {
+        // Doubles the capacity of the index. The keys are all different, so the
+        // entries are put back without reading the log.
+        long[] oldHashes = this.hashes, oldOffsets = this.offsets;
+        this.newEntries(this.capacity * 2);
+        for (int s = 0; s < oldHashes.length; s++) {
+            if (oldHashes[s] == 0)
+                continue;
+            int i = this.entryOf(oldHashes[s]);
+            while (this.hashes[i] != 0) {
+                i = (i + 1) % this.capacity;
+            }
+            this.hashes[i] = oldHashes[s];
+            this.offsets[i] = oldOffsets[s];
+        }
+    }
+
+    private void compact(long maxLength) throws IOException {
+        // Copies the live records to a new log, dropping the oldest ones until the rest
+        // fit in maxLength bytes, then swaps it in and indexes it in memory
+        long[] offsets = new long[this.count];
+        int n = 0;
+        for (int i = 0; i < this.capacity; i++) {
+            if (this.hashes[i] != 0 && n < offsets.length)
+                offsets[n++] = this.offsets[i];
+        }
+        Arrays.sort(offsets, 0, n);
+
+        long[] sizes = new long[n];
+        long total = LOG_HEADER;
+        byte[] lengthBytes = new byte[4];
+        for (int i = 0; i < n; i++) {
+            if (offsets[i] >= LOG_HEADER && offsets[i] + RECORD_OVERHEAD <= this.log_length) {
+                this.log.seek(offsets[i]);
+                this.log.readFully(lengthBytes);
+                sizes[i] = readInt(lengthBytes, 0) + 8L;
+                total += sizes[i];
+            }
+        }
+        int first = 0;
+        while (first < n && total > maxLength) {
+            total -= sizes[first++];
+        }
+
+        long[] keptHashes = new long[n - first], keptOffsets = new long[n - first];
+        int kept = 0;
+        long pos = LOG_HEADER;
+        FileOutputStream file = new FileOutputStream(this.temp_file);
+        try {
+            BufferedOutputStream out = new BufferedOutputStream(file, 1 << 16);
+            byte[] header = new byte[LOG_HEADER], record;
+            writeInt(header, 0, LOG_MAGIC);
+            out.write(header);
+            for (int i = first; i < n; i++) {
+                record = this.readRaw(offsets[i]);
+                if (record == null)
+                    continue;
+                out.write(record);
+                keptHashes[kept] = hash(record, 4, readInt(record, 4 + DIGEST_SIZE));
+                keptOffsets[kept++] = pos;
+                pos += record.length;
+            }
+            out.flush();
+            file.getFD().sync();
+        } finally {
+            file.close();
+        }
+
+        this.index.setLength(0); // The entries point into the old log
+        this.log.close();
+        if (!this.log_file.delete() || !this.temp_file.renameTo(this.log_file))
+            throw new IOException("Could not replace " + this.log_file);
+        this.log = new RandomAccessFile(this.log_file, "rw");
+
+        int capacity = MIN_CAPACITY;
+        while (kept * 4L > capacity * 3L) {
+            capacity *= 2;
+        }
+        this.newEntries(capacity);
+        for (int s = 0; s < kept; s++) {
+            int i = this.entryOf(keptHashes[s]);
+            while (this.hashes[i] != 0) {
+                i = (i + 1) % this.capacity;
+            }
+            this.hashes[i] = keptHashes[s];
+            this.offsets[i] = keptOffsets[s];
+        }
+        this.count = kept;
+        this.dead_bytes = 0;
+        this.log_length = pos;
+        this.flush();
+    }
+}
@@ -0,0 +1,590 @@
+package bexpred;
+
+/*
+ * BExpred - Boolean Expression Reducer
+ * Goal: To reduce specified boolean expressions
+ * Current state: Evaluates a given expression with input values
+ * Copyright (c) 2003 Benjamin Biron
+ * License: GPL
+
+    This file is part of BExpred.
+
+    BExpred is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    BExpred is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with BExpred; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+ */
+
+class SATSolver {
+    // A conflict driven clause learning SAT solver. Variables are numbered from 1 and
+    // literals are written as in DIMACS files, -v being the negation of v. Inside,
+    // literal 2 * (v - 1) is v and 2 * (v - 1) + 1 is -v, so lit ^ 1 is its negation.
+    //       Two literals of every clause are watched, a clause is only looked at when
+    //       one of them becomes false
+    //       Conflicts are analyzed up to the first unique implication point, the
+    //       learnt clause is shortened by dropping the literals implied by the others
+    //       Variables are picked by activity, bumped when they are part of a conflict
+    //       (VSIDS), and set to the value they last had
+    //       The search restarts after a number of conflicts following the Luby
+    //       sequence, and forgets half of the learnt clauses from time to time
+    // Clauses can be added between calls to solve().
+
+    public static final int UNSAT = 0;
+    public static final int SAT = 1;
+    public static final int UNKNOWN = -1; // The conflict limit was reached
+
+    private static final int RESTART_UNIT = 100; // Conflicts between restarts, times the Luby sequence
+    private static final double VAR_DECAY = 0.95;
+
+    private int var_count = 0;
+    private int[] values = new int[0]; // Per literal: 1 if true, -1 if false, 0 if unassigned
+    private int[] levels = new int[0]; // Per variable, the decision level it was assigned at
+    private int[] reasons = new int[0]; // Per variable, the clause that implied it or -1
+    private boolean[] phases = new boolean[0]; // Per variable, the last value it had
+    private double[] activity = new double[0];
+    private double var_inc = 1;
+
+    // The variables not assigned yet, most active first, as a binary heap
+    private int[] heap = new int[0];
+    private int[] heap_index = new int[0]; // The position of each variable in the heap, -1 if not in it
+    private int heap_size = 0;
+
+    private int[] trail = new int[0]; // The assigned literals, in order
+    private int trail_size = 0;
+    private int[] trail_lims = new int[0]; // Where every decision level starts on the trail
+    private int decision_level = 0;
+    private int queue_head = 0; // The trail entries from here on haven't been propagated yet
+
+    private int[][] clauses = new int[16][];
+    private int[] clause_lbd = new int[16]; // Levels in a learnt clause when it was learnt, 0 for problem clauses
+    private int clause_count = 0;
+    private int learnt_count = 0;
+    private int max_learnts = 0;
+    private int[][] watches = new int[0][]; // Per literal, the clauses watching it
+    private int[] watch_counts = new int[0];
+
+    private boolean inconsistent = false; // An empty clause was found
+    private boolean[] model = null;
+    private long conflict_limit = -1;
+
+    private long conflicts = 0;
+    private long decisions = 0;
+    private long propagations = 0;
+
+    /**
+     * @return the number of the new variable
+     */
+    public int newVar() {
+        int v = this.var_count++;
+        if (v == this.levels.length) {
+            int capacity = Math.max(16, v * 2);
+            this.values = grow(this.values, capacity * 2);
+            this.levels = grow(this.levels, capacity);
+            this.reasons = grow(this.reasons, capacity);
+            this.heap = grow(this.heap, capacity);
+            this.heap_index = grow(this.heap_index, capacity);
+            this.trail = grow(this.trail, capacity);
+            this.trail_lims = grow(this.trail_lims, capacity);
+            this.watch_counts = grow(this.watch_counts, capacity * 2);
+
+            boolean[] grownPhases = new boolean[capacity];
+            System.arraycopy(this.phases, 0, grownPhases, 0, v);
+            this.phases = grownPhases;
+            double[] grownActivity = new double[capacity];
+            System.arraycopy(this.activity, 0, grownActivity, 0, v);
+            this.activity = grownActivity;
+            int[][] grownWatches = new int[capacity * 2][];
+            System.arraycopy(this.watches, 0, grownWatches, 0, v * 2);
+            this.watches = grownWatches;
+        }
+
+        this.reasons[v] = -1;
+        this.watches[2 * v] = new int[4];
+        this.watches[2 * v + 1] = new int[4];
+        this.heap_index[v] = -1;
+        this.heapInsert(v);
+        return v + 1;
+    }
+
+    private static int[] grow(int[] from, int length) {
+        int[] to = new int[length];
+        System.arraycopy(from, 0, to, 0, from.length);
+        return to;
+    }
+
+    public int getVarCount() {
+        return this.var_count;
+    }
+
+    public long getConflicts() {
+        return this.conflicts;
+    }
+
+    public long getDecisions() {
+        return this.decisions;
+    }
+
+    public long getPropagations() {
+        return this.propagations;
+    }
+
+    /**
+     * @param limit the number of conflicts solve() may run into before giving up
+     *              with UNKNOWN, -1 for no limit
+     */
+    public void setConflictLimit(long limit) {
+        this.conflict_limit = limit;
+    }
+
+    /**
+     * Adds a clause, which is satisfied if one of its literals is
+     *
+     * @param literals the literals, v or -v for variable v
+     * @return false if the clauses can't be satisfied any more
+     */
+    public boolean addClause(int[] literals) {
+        int[] clause = new int[literals.length];
+        int size = 0, lit, v;
+
+        if (this.inconsistent)
+            return false;
+        for (int i = 0; i < literals.length; i++) {
+            v = Math.abs(literals[i]);
+            if (v == 0 || v > this.var_count)
+                throw new IllegalArgumentException("Unknown variable " + literals[i]);
+            lit = 2 * (v - 1) + (literals[i] < 0 ? 1 : 0);
+
+            if (this.values[lit] == 1)
+                return true; // Already satisfied, the solver is always at level 0 here
+            if (this.values[lit] == -1)
+                continue;
+            for (int s = 0; s < size && lit != -1; s++) {
+                if (clause[s] == (lit ^ 1))
+                    return true; // Always satisfied
+                if (clause[s] == lit)
+                    lit = -1;
+            }
+            if (lit != -1)
+                clause[size++] = lit;
+        }
+
+        if (size == 0) {
+            this.inconsistent = true;
+        } else if (size == 1) {
+            this.assign(clause[0], -1);
+            this.inconsistent = this.propagate() != -1;
+        } else {
+            int[] trimmed = new int[size];
+            System.arraycopy(clause, 0, trimmed, 0, size);
+            this.attach(trimmed, 0);
+        }
+        return !this.inconsistent;
+    }
+
+    private int attach(int[] clause, int lbd) {
+        if (this.clause_count == this.clauses.length) {
+            int[][] grown = new int[this.clause_count * 2][];
+            System.arraycopy(this.clauses, 0, grown, 0, this.clause_count);
+            this.clauses = grown;
+            this.clause_lbd = grow(this.clause_lbd, this.clause_count * 2);
+        }
+        int index = this.clause_count++;
+        this.clauses[index] = clause;
+        this.clause_lbd[index] = lbd;
+        this.watch(clause[0], index);
+        this.watch(clause[1], index);
+        return index;
+    }
+
+    private void watch(int lit, int clause) {
+        int count = this.watch_counts[lit];
+        if (count == this.watches[lit].length)
+            this.watches[lit] = grow(this.watches[lit], count * 2);
+        this.watches[lit][count] = clause;
+        this.watch_counts[lit] = count + 1;
+    }
+
+    /**
+     * @param var a variable
+     * @return its value in the assignment found by the last call to solve() returning SAT
+     */
+    public boolean getValue(int var) {
+        if (this.model == null)
+            throw new IllegalStateException("No satisfying assignment was found");
+        return this.model[var - 1];
+    }
+
+    /**
+     * Looks for an assignment satisfying all the clauses
+     *
+     * @return SAT, UNSAT, or UNKNOWN if the conflict limit was reached first
+     */
+    public int solve() {
+        long startConflicts = this.conflicts, restartConflicts = 0;
+        int restarts = 0, confl, v;
+        int[] learnt;
+
+        this.model = null;
+        if (this.inconsistent)
+            return UNSAT;
+        if (this.max_learnts == 0)
+            this.max_learnts = this.clause_count / 3 + 1000;
+
+        while (true) {
+            confl = this.propagate();
+            if (confl != -1) {
+                this.conflicts++;
+                restartConflicts++;
+                if (this.decision_level == 0) {
+                    this.inconsistent = true;
+                    return UNSAT;
+                }
+
+                learnt = this.analyze(confl);
+                this.backtrack(this.backjumpLevel(learnt));
+                if (learnt.length == 1) {
+                    this.assign(learnt[0], -1);
+                } else {
+                    this.assign(learnt[0], this.attach(learnt, this.countLevels(learnt)));
+                    this.learnt_count++;
+                }
+                this.var_inc /= VAR_DECAY;
+                continue;
+            }
+
+            if (restartConflicts >= RESTART_UNIT * luby(restarts)) {
+                this.backtrack(0);
+                restarts++;
+                restartConflicts = 0;
+                if (this.learnt_count > this.max_learnts) {
+                    this.reduceLearnts();
+                    this.max_learnts += this.max_learnts / 10;
+                }
+                if (this.conflict_limit >= 0 && this.conflicts - startConflicts >= this.conflict_limit)
+                    return UNKNOWN;
+                continue;
+            }
+
+            v = this.pickVar();
+            if (v == -1) {
+                this.model = new boolean[this.var_count];
+                for (int i = 0; i < this.var_count; i++) {
+                    this.model[i] = this.values[2 * i] == 1;
+                }
+                this.backtrack(0);
+                return SAT;
+            }
+
+            this.decisions++;
+            this.trail_lims[this.decision_level++] = this.trail_size;
+            this.assign(2 * v + (this.phases[v] ? 0 : 1), -1);
+        }
+    }
+
+    private static long luby(int i) {
+        // The i-th element of 1 1 2 1 1 2 4 1 1 2 1 1 2 4 8...
+        long size = 1;
+        int seq = 0;
+        while (size < i + 1) {
+            seq++;
+            size = 2 * size + 1;
+        }
+        while (size - 1 != i) {
+            size = (size - 1) >> 1;
+            seq--;
+            i = (int) (i % size);
+        }
+        return 1L << seq;
+    }
+
+    private void assign(int lit, int reason) {
+        int v = lit >> 1;
+        this.values[lit] = 1;
+        this.values[lit ^ 1] = -1;
+        this.levels[v] = this.decision_level;
+        this.reasons[v] = reason;
+        this.trail[this.trail_size++] = lit;
+    }
+
+    private int propagate() {
+        // Returns the clause found false, or -1
+        int lit, falseLit, count, kept, ci, k, swap;
+        int[] list, clause;
+
+        while (this.queue_head < this.trail_size) {
+            lit = this.trail[this.queue_head++];
+            falseLit = lit ^ 1;
+            list = this.watches[falseLit];
+            count = this.watch_counts[falseLit];
+            kept = 0;
+            this.propagations++;
+
+            for (int i = 0; i < count; i++) {
+                ci = list[i];
+                clause = this.clauses[ci];
+                // Keep the false literal second
+                if (clause[0] == falseLit) {
+                    clause[0] = clause[1];
+                    clause[1] = falseLit;
+                }
+                if (this.values[clause[0]] == 1) {
+                    list[kept++] = ci;
+                    continue;
+                }
+
+                // Look for another literal to watch
+                for (k = 2; k < clause.length && this.values[clause[k]] == -1; k++) ;
+                if (k < clause.length) {
+                    swap = clause[k];
+                    clause[k] = falseLit;
+                    clause[1] = swap;
+                    this.watch(swap, ci);
+                    continue;
+                }
+
+                list[kept++] = ci;
+                if (this.values[clause[0]] == -1) {
+                    // Conflict, the remaining watches are kept
+                    while (++i < count) {
+                        list[kept++] = list[i];
+                    }
+                    this.watch_counts[falseLit] = kept;
+                    this.queue_head = this.trail_size;
+                    return ci;
+                }
+                this.assign(clause[0], ci);
+            }
+            this.watch_counts[falseLit] = kept;
+        }
+        return -1;
+    }
+
+    private int[] analyze(int confl) {
+        // The first unique implication point clause, its asserting literal first
+        boolean[] seen = new boolean[this.var_count];
+        int[] learnt = new int[16];
+        int size = 1, pathCount = 0, lit = -1, index = this.trail_size - 1, v;
+        int[] clause;
+
+        do {
+            clause = this.clauses[confl];
+            for (int i = (lit == -1 ? 0 : 1); i < clause.length; i++) {
+                v = clause[i] >> 1;
+                if (seen[v] || this.levels[v] == 0)
+                    continue;
+                seen[v] = true;
+                this.bump(v);
+                if (this.levels[v] == this.decision_level) {
+                    pathCount++;
+                } else {
+                    if (size == learnt.length)
+                        learnt = grow(learnt, size * 2);
+                    learnt[size++] = clause[i];
+                }
+            }
+
+            while (!seen[this.trail[index] >> 1]) {
+                index--;
+            }
+            lit = this.trail[index--];
+            confl = this.reasons[lit >> 1];
+            seen[lit >> 1] = false;
+            pathCount--;
+        } while (pathCount > 0);
+        learnt[0] = lit ^ 1;
+
+        // Drop the literals whose reason only has literals already in the clause
+        int kept = 1, r;
+        boolean implied;
+        for (int i = 1; i < size; i++) {
+            r = this.reasons[learnt[i] >> 1];
+            implied = r != -1;
+            if (implied) {
+                clause = this.clauses[r];
+                for (int k = 1; k < clause.length && implied; k++) {
+                    v = clause[k] >> 1;
+                    implied = seen[v] || this.levels[v] == 0;
+                }
+            }
+            if (!implied)
+                learnt[kept++] = learnt[i];
+        }
+
+        int[] trimmed = new int[kept];
+        System.arraycopy(learnt, 0, trimmed, 0, kept);
+        return trimmed;
+    }
+
+    private int backjumpLevel(int[] learnt) {
+        // Moves the literal of the highest level after the asserting one, so both are
+        // watched, and returns its level
+        if (learnt.length == 1)
+            return 0;
+        int best = 1, swap;
+        for (int i = 2; i < learnt.length; i++) {
+            if (this.levels[learnt[i] >> 1] > this.levels[learnt[best] >> 1])
+                best = i;
+        }
+        swap = learnt[1];
+        learnt[1] = learnt[best];
+        learnt[best] = swap;
+        return this.levels[learnt[1] >> 1];
+    }
+
+    private int countLevels(int[] learnt) {
+        // The number of decision levels in the clause, fewer means more useful
+        int count = 0, level;
+        for (int i = 0; i < learnt.length; i++) {
+            level = this.levels[learnt[i] >> 1];
+            boolean found = false;
+            for (int k = 0; k < i && !found; k++) {
+                found = this.levels[learnt[k] >> 1] == level;
+            }
+            if (!found)
+                count++;
+        }
+        return count;
+    }
+
+    private void backtrack(int level) {
+        int lit, v;
+        if (this.decision_level <= level)
+            return;
+        for (int i = this.trail_size - 1; i >= this.trail_lims[level]; i--) {
+            lit = this.trail[i];
+            v = lit >> 1;
+            this.values[lit] = 0;
+            this.values[lit ^ 1] = 0;
+            this.reasons[v] = -1;
+            this.phases[v] = (lit & 1) == 0;
+            if (this.heap_index[v] == -1)
+                this.heapInsert(v);
+        }
+        this.trail_size = this.trail_lims[level];
+        this.queue_head = this.trail_size;
+        this.decision_level = level;
+    }
+
+    private int pickVar() {
+        // The most active unassigned variable, or -1
+        int v;
+        while (this.heap_size > 0) {
+            v = this.heapRemoveMax();
+            if (this.values[2 * v] == 0)
+                return v;
+        }
+        return -1;
+    }
+
+    private void reduceLearnts() {
+        // Forgets the learnt clauses spanning the most decision levels, keeping the
+        // ones spanning two or fewer. Only called at level 0, where no learnt clause
+        // is the reason of an assignment that matters.
+        int[] counts = new int[this.var_count + 2];
+        int lbd, limit, toRemove = this.learnt_count / 2;
+        for (int i = 0; i < this.clause_count; i++) {
+            lbd = this.clause_lbd[i];
+            if (lbd > 2)
+                counts[Math.min(lbd, counts.length - 1)]++;
+        }
+        // The smallest count of levels all the forgotten clauses have at least
+        for (limit = counts.length - 1; limit > 2 && toRemove > 0; limit--) {
+            toRemove -= counts[limit];
+        }
+
+        int kept = 0;
+        for (int i = 0; i < this.clause_count; i++) {
+            if (this.clause_lbd[i] > limit) {
+                this.learnt_count--;
+                continue;
+            }
+            this.clauses[kept] = this.clauses[i];
+            this.clause_lbd[kept++] = this.clause_lbd[i];
+        }
+        for (int i = kept; i < this.clause_count; i++) {
+            this.clauses[i] = null;
+        }
+        this.clause_count = kept;
+
+        for (int lit = 0; lit < 2 * this.var_count; lit++) {
+            this.watch_counts[lit] = 0;
+        }
+        for (int i = 0; i < this.clause_count; i++) {
+            this.watch(this.clauses[i][0], i);
+            this.watch(this.clauses[i][1], i);
+        }
+        for (int i = 0; i < this.trail_size; i++) {
+            this.reasons[this.trail[i] >> 1] = -1;
+        }
+    }
+
+    private void bump(int v) {
+        this.activity[v] += this.var_inc;
+        if (this.activity[v] > 1e100) {
+            // Scale everything down, the order stays the same
+            for (int i = 0; i < this.var_count; i++) {
+                this.activity[i] *= 1e-100;
+            }
+            this.var_inc *= 1e-100;
+        }
+        if (this.heap_index[v] != -1)
+            this.heapUp(this.heap_index[v]);
+    }
+
+    private void heapInsert(int v) {
+        this.heap_index[v] = this.heap_size;
+        this.heap[this.heap_size++] = v;
+        this.heapUp(this.heap_size - 1);
+    }
+
+    private int heapRemoveMax() {
+        int top = this.heap[0];
+        this.heap_index[top] = -1;
+        this.heap_size--;
+        if (this.heap_size > 0) {
+            this.heap[0] = this.heap[this.heap_size];
+            this.heap_index[this.heap[0]] = 0;
+            this.heapDown(0);
+        }
+        return top;
+    }
+
+    private void heapUp(int i) {
+        int v = this.heap[i], parent;
+        while (i > 0) {
+            parent = (i - 1) >> 1;
+            if (this.activity[this.heap[parent]] >= this.activity[v])
+                break;
+            this.heap[i] = this.heap[parent];
+            this.heap_index[this.heap[i]] = i;
+            i = parent;
+        }
+        this.heap[i] = v;
+        this.heap_index[v] = i;
+    }
+
+    private void heapDown(int i) {
+        int v = this.heap[i], child;
+        while ((child = 2 * i + 1) < this.heap_size) {
+            if (child + 1 < this.heap_size && this.activity[this.heap[child + 1]] > this.activity[this.heap[child]])
+                child++;
+            if (this.activity[this.heap[child]] <= this.activity[v])
+                break;
+            this.heap[i] = this.heap[child];
+            this.heap_index[this.heap[i]] = i;
+            i = child;
+        }
+        this.heap[i] = v;
+        this.heap_index[v] = i;
+    }
+}
@@ -0,0 +1,293 @@
+package bexpred;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Enumeration;
+import java.util.Hashtable;
+
+/*
+ * BExpred - Boolean Expression Reducer
+ * Goal: To reduce specified boolean expressions
+ * Current state: Evaluates a given expression with input values
+ * Copyright (c) 2003 Benjamin Biron
+ * License: GPL
+
+    This file is part of BExpred.
+
+    BExpred is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    BExpred is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with BExpred; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+ */
+
+class TTFileStorage implements TTStorage {
+    // The words are kept in a file and read through a few cached pages, so tables
+    // larger than the heap (or than 2^31 rows) can be built. The file starts with
+    // a header:
+    //       int magic
+    //       int variable count
+    //       int complete, 1 once all the words have been written
+    //       int reserved
+    // followed by the words, big-endian.
+    private static final int MAGIC = 0x54544231; // "TTB1"
+    private static final int HEADER_SIZE = 16;
+    private static final int PAGE_WORDS = 8192; // 64 KB pages
+    private static final int PAGE_COUNT = 4;
+
+    private final File file;
+    private final boolean temporary; // Temporary files are deleted when closed
+    private boolean closed = false;
+
+    // The temporary files not closed yet, deleted when the VM exits. Only the files
+    // are kept, so the storages can still be collected, which closes them.
+    private static final Hashtable temporaryFiles = new Hashtable();
+    private static Thread cleaner;
+    private final RandomAccessFile raf;
+    private final int var_count;
+    private final long word_count;
+
+    private final long[][] pages = new long[PAGE_COUNT][];
+    private final long[] pageNumbers = new long[PAGE_COUNT];
+    private final boolean[] dirty = new boolean[PAGE_COUNT];
+    private final long[] lastUse = new long[PAGE_COUNT];
+    private long useCount = 0;
+    private final byte[] buffer = new byte[PAGE_WORDS * 8];
+
+    private TTFileStorage(File file, RandomAccessFile raf, int varCount, long wordCount, boolean temporary) {
+        this.file = file;
+        this.raf = raf;
+        this.var_count = varCount;
+        this.word_count = wordCount;
+        this.temporary = temporary;
+
+        for (int i = 0; i < PAGE_COUNT; i++) {
+            this.pageNumbers[i] = -1;
+        }
+    }
+
+    /**
+     * Creates a storage of zeroed words in a file, any existing content is lost
+     *
+     * @param file      where to keep the words
+     * @param varCount  the amount of variables of the table
+     * @param wordCount the amount of words of the table
+     * @param temporary whether the file should be deleted when the storage is closed
+     * @return the new storage
+     * @throws IOException if the file can't be written
+     */
+    public static TTFileStorage create(File file, int varCount, long wordCount, boolean temporary) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(0);
+        raf.setLength(HEADER_SIZE + wordCount * 8);
+        raf.seek(0);
+        raf.writeInt(MAGIC);
+        raf.writeInt(varCount);
+        raf.writeInt(0);
+        raf.writeInt(0);
+        if (temporary)
+            addTemporary(file);
+        return new TTFileStorage(file, raf, varCount, wordCount, temporary);
+    }
+
+    /**
+     * Opens a table previously written with markComplete()
+     *
+     * @param file where the words are kept
+     * @return the storage
+     * @throws IOException if the file can't be read or doesn't hold a complete table
+     */
+    public static TTFileStorage open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        int varCount;
+        long wordCount;
+
+        try {
+            if (raf.length() < HEADER_SIZE || raf.readInt() != MAGIC)
+                throw new IOException("Not a truth table file: " + file);
+
+            varCount = raf.readInt();
+            if (raf.readInt() != 1)
+                throw new IOException("Incomplete truth table file: " + file);
+
+            wordCount = ((1L << varCount) + 63) >>> 6;
+            if (raf.length() != HEADER_SIZE + wordCount * 8)
+                throw new IOException("Truncated truth table file: " + file);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+
+        return new TTFileStorage(file, raf, varCount, wordCount, false);
+    }
+
+    public static File createTempFile() throws IOException {
+        String dir = System.getProperty("turaco.tt.dir");
+        return File.createTempFile("turaco", ".tt", dir == null ? null : new File(dir));
+    }
+
+    public int getVarCount() {
+        return this.var_count;
+    }
+
+    public long getWordCount() {
+        return this.word_count;
+    }
+
+    public synchronized long getWord(long index) {
+        int page = this.getPage(index / PAGE_WORDS);
+        return this.pages[page][(int) (index % PAGE_WORDS)];
+    }
+
+    public synchronized void setWord(long index, long word) {
+        int page = this.getPage(index / PAGE_WORDS);
+        this.pages[page][(int) (index % PAGE_WORDS)] = word;
+        this.dirty[page] = true;
+    }
+
+    public TTStorage newStorage(int varCount, long wordCount) {
+        try {
+            return create(createTempFile(), varCount, wordCount, true);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not create a truth table file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes all the words to the file and flags the table as complete, so it can be opened again
+     *
+     * @throws IOException if the file can't be written
+     */
+    public synchronized void markComplete() throws IOException {
+        this.flush();
+        this.raf.seek(8);
+        this.raf.writeInt(1);
+    }
+
+    public synchronized void close() {
+        if (this.closed)
+            return;
+        this.closed = true;
+
+        try {
+            if (!this.temporary)
+                this.flush();
+            this.raf.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        if (this.temporary) {
+            this.file.delete();
+            temporaryFiles.remove(this.file);
+        }
+    }
+
+    protected void finalize() throws Throwable {
+        // Tables nobody closed still give back their temporary file and handle
+        if (this.temporary)
+            this.close();
+        super.finalize();
+    }
+
+    private static synchronized void addTemporary(File file) {
+        // Unlike File.deleteOnExit(), the files are forgotten once they're closed
+        temporaryFiles.put(file, file);
+        if (cleaner == null) {
+            cleaner = new Thread() {
+                public void run() {
+                    for (Enumeration e = temporaryFiles.keys(); e.hasMoreElements(); ) {
+                        ((File) e.nextElement()).delete();
+                    }
+                }
+            };
+            Runtime.getRuntime().addShutdownHook(cleaner);
+        }
+    }
+
+    private void flush() throws IOException {
+        for (int i = 0; i < PAGE_COUNT; i++) {
+            if (this.dirty[i])
+                this.writePage(i);
+        }
+    }
+
+    private int getPage(long pageNumber) {
+        // Returns the cache slot holding the page, loading it in place of the least
+        // recently used one if needed
+        int slot = 0;
+        for (int i = 0; i < PAGE_COUNT; i++) {
+            if (this.pageNumbers[i] == pageNumber) {
+                this.lastUse[i] = ++this.useCount;
+                return i;
+            }
+            if (this.lastUse[i] < this.lastUse[slot])
+                slot = i;
+        }
+
+        try {
+            if (this.dirty[slot])
+                this.writePage(slot);
+            this.readPage(slot, pageNumber);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not access the truth table file: " + e.getMessage());
+        }
+
+        this.lastUse[slot] = ++this.useCount;
+        return slot;
+    }
+
+    private int pageLength(long pageNumber) {
+        return (int) Math.min(PAGE_WORDS, this.word_count - pageNumber * PAGE_WORDS);
+    }
+
+    private void readPage(int slot, long pageNumber) throws IOException {
+        int length = this.pageLength(pageNumber), b;
+        long word;
+
+        if (this.pages[slot] == null)
+            this.pages[slot] = new long[PAGE_WORDS];
+
+        this.raf.seek(HEADER_SIZE + pageNumber * PAGE_WORDS * 8);
+        this.raf.readFully(this.buffer, 0, length * 8);
+        for (int i = 0; i < length; i++) {
+            word = 0;
+            b = i * 8;
+            for (int s = 0; s < 8; s++) {
+                word = (word << 8) | (this.buffer[b + s] & 0xFF);
+            }
+            this.pages[slot][i] = word;
+        }
+
+        this.pageNumbers[slot] = pageNumber;
+        this.dirty[slot] = false;
+    }
+
+    private void writePage(int slot) throws IOException {
+        int length = this.pageLength(this.pageNumbers[slot]), b;
+        long word;
+
+        for (int i = 0; i < length; i++) {
+            word = this.pages[slot][i];
+            b = i * 8;
+            for (int s = 7; s >= 0; s--) {
+                this.buffer[b + s] = (byte) word;
+                word >>>= 8;
+            }
+        }
+
+        this.raf.seek(HEADER_SIZE + this.pageNumbers[slot] * PAGE_WORDS * 8);
+        this.raf.write(this.buffer, 0, length * 8);
+        this.dirty[slot] = false;
+    }
+}
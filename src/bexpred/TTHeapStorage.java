@@ -0,0 +1,55 @@
+package bexpred;
+
+/*
+ * BExpred - Boolean Expression Reducer
+ * Goal: To reduce specified boolean expressions
+ * Current state: Evaluates a given expression with input values
+ * Copyright (c) 2003 Benjamin Biron
+ * License: GPL
+
+    This file is part of BExpred.
+
+    BExpred is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    BExpred is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with BExpred; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+ */
+
+class TTHeapStorage implements TTStorage {
+    private final long[] words;
+
+    TTHeapStorage(long wordCount) {
+        if (wordCount > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Too many words to be kept on the heap: " + wordCount);
+        this.words = new long[(int) wordCount];
+    }
+
+    public long getWordCount() {
+        return this.words.length;
+    }
+
+    public long getWord(long index) {
+        return this.words[(int) index];
+    }
+
+    public void setWord(long index, long word) {
+        this.words[(int) index] = word;
+    }
+
+    public TTStorage newStorage(int varCount, long wordCount) {
+        return new TTHeapStorage(wordCount);
+    }
+
+    public void close() {
+    }
+}
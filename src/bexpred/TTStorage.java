@@ -0,0 +1,51 @@
+package bexpred;
+
+/*
+ * BExpred - Boolean Expression Reducer
+ * Goal: To reduce specified boolean expressions
+ * Current state: Evaluates a given expression with input values
+ * Copyright (c) 2003 Benjamin Biron
+ * License: GPL
+
+    This file is part of BExpred.
+
+    BExpred is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    BExpred is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with BExpred; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+ */
+
+interface TTStorage {
+    // Holds the output column of a TruthTable as words of 64 rows, the output of
+    // row i being bit (i % 64) of word i / 64
+
+    long getWordCount();
+
+    long getWord(long index);
+
+    void setWord(long index, long word);
+
+    /**
+     * Creates an empty storage of the same kind as this one
+     *
+     * @param varCount  the amount of variables of the new table
+     * @param wordCount the amount of words of the new table
+     * @return the new storage
+     */
+    TTStorage newStorage(int varCount, long wordCount);
+
+    /**
+     * Releases the resources held by the storage, it can't be used afterwards
+     */
+    void close();
+}
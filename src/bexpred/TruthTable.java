@@ -1,5 +1,7 @@
 package bexpred;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 
 /*
@@ -28,62 +30,155 @@ import java.util.ArrayList;
  */
 
 public class TruthTable {
-    private boolean tt[][];
-    private int row_count;
+    // The input columns of 64 consecutive rows starting at a multiple of 64, for
+    // the first 6 variables. Bit i of pattern s is the value of variable s in row i.
+    static final long[] COLUMN_PATTERNS = {
+            0xAAAAAAAAAAAAAAAAL,
+            0xCCCCCCCCCCCCCCCCL,
+            0xF0F0F0F0F0F0F0F0L,
+            0xFF00FF00FF00FF00L,
+            0xFFFF0000FFFF0000L,
+            0xFFFFFFFF00000000L
+    };
+
+    // Only the output column is stored, one bit per row: the output of row i is
+    // bit (i % 64) of word i / 64. The inputs are the bits of the row index, bit s
+    // being the value of variable s.
+    //
+    // Tables of more than HEAP_VAR_LIMIT variables are kept in a temporary file
+    // rather than on the heap, the limit can be set with the turaco.tt.heapvars
+    // property and the directory of the files with turaco.tt.dir.
+    private static final int HEAP_VAR_LIMIT = Math.min(Integer.getInteger("turaco.tt.heapvars", 30).intValue(), 36);
+    private static final int MAX_VARS = 62;
+
+    // How getSOP() and getPOS() pick the terms of the reduced expression
+    public static final int REDUCE_GREEDY = 0; // Fast, may give a few more terms than needed
+    public static final int REDUCE_EXACT = 1; // Fewest terms, within the budget of the cover search
+    public static final int REDUCE_ESPRESSO = 2; // Heuristic, for functions with too many primes for the others
+
+    private TTStorage outputs;
+    private long row_count;
     private int col_count;
 
     public TruthTable(BExprTree aTree) {
+        this(aTree, newStorage(aTree.getVarCount()));
+    }
+
+    /**
+     * Builds the truth table of a tree in a file, which is kept after close()
+     * and can be read again with open()
+     *
+     * @param aTree the tree to build the table of
+     * @param file  where to keep the table
+     * @throws IOException if the file can't be written
+     */
+    public TruthTable(BExprTree aTree, File file) throws IOException {
+        this(aTree, TTFileStorage.create(file, checkVarCount(aTree.getVarCount()), wordCount(two_exp(aTree.getVarCount())), false));
+        ((TTFileStorage) this.outputs).markComplete();
+    }
+
+    private TruthTable(BExprTree aTree, TTStorage outputs) {
         int varCount = aTree.getVarCount();
         this.row_count = two_exp(varCount);
         this.col_count = varCount + 1;
-        this.initializeTT();
-
-        boolean bArray[] = new boolean[this.col_count];
-        int c;
-        for (int i = 0; i < this.row_count; i++) {
-            c = 0;
-            for (int s = 0; s < varCount; s++) {
-                bArray[c++] = ((i >> s) & 1) == 1;
-            }
-            bArray[this.col_count - 1] = aTree.evaluate(bArray);
-            this.setRow(i, bArray);
+        this.outputs = outputs;
+
+        // The outputs are computed 64 rows at a time
+        BExprProgram program = aTree.getProgram();
+        long[] stack = new long[program.getMaxDepth()];
+        long wordCount = this.outputs.getWordCount();
+        for (long i = 0; i < wordCount; i++) {
+            this.outputs.setWord(i, program.evaluateBlock(i << 6, stack));
         }
+        this.outputs.setWord(wordCount - 1, this.outputs.getWord(wordCount - 1) & lastWordMask(this.row_count));
     }
 
-    private boolean[][] getTT() {
-        return this.tt;
+    private TruthTable(TTStorage outputs, int varCount) {
+        this.row_count = two_exp(varCount);
+        this.col_count = varCount + 1;
+        this.outputs = outputs;
     }
 
-    private boolean[][] getInvertedTT() {
-        boolean[][] inverted = new boolean[this.row_count][this.col_count];
+    /**
+     * Opens a truth table built with TruthTable(BExprTree, File)
+     *
+     * @param file where the table is kept
+     * @return the table
+     * @throws IOException if the file can't be read or doesn't hold a complete table
+     */
+    public static TruthTable open(File file) throws IOException {
+        TTFileStorage storage = TTFileStorage.open(file);
+        return new TruthTable(storage, storage.getVarCount());
+    }
+
+    /**
+     * Releases the file of tables that aren't kept on the heap. The table can't be used afterwards.
+     */
+    public void close() {
+        this.outputs.close();
+    }
+
+    private static int checkVarCount(int varCount) {
+        if (varCount > MAX_VARS)
+            throw new IllegalArgumentException("Truth tables are limited to " + MAX_VARS + " variables");
+        return varCount;
+    }
+
+    private static TTStorage newStorage(int varCount) {
+        long wordCount = wordCount(two_exp(checkVarCount(varCount)));
+        if (varCount <= HEAP_VAR_LIMIT)
+            return new TTHeapStorage(wordCount);
 
-        for (int i = 0; i < inverted.length; i++) {
-            System.arraycopy(this.tt[i], 0, inverted[i], 0, inverted[i].length);
-            inverted[i][this.col_count - 1] = (!this.tt[i][this.col_count - 1]);
+        try {
+            return TTFileStorage.create(TTFileStorage.createTempFile(), varCount, wordCount, true);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not create a truth table file: " + e.getMessage());
         }
+    }
 
-        return inverted;
+    private static long wordCount(long rowCount) {
+        return (rowCount + 63) >>> 6;
     }
 
-    private void setRow(int row, boolean aRow[]) {
-        System.arraycopy(aRow, 0, this.tt[row], 0, this.col_count);
+    private static long lastWordMask(long rowCount) {
+        // The bits of the last word that hold rows
+        return (rowCount & 63) == 0 ? -1L : (1L << (rowCount & 63)) - 1;
     }
 
-    private static int two_exp(int exp) {
-        int n = 1;
-        for (int i = 1; i <= exp; i++) {
-            n <<= 1;
-        }
-        return n;
+    int getVarCount() {
+        return this.col_count - 1;
     }
 
-    private void initializeTT() {
-        this.tt = new boolean[this.row_count][this.col_count];
-        for (int i = 0; i < this.row_count; i++) {
-            for (int s = 0; s < this.col_count; s++) {
-                this.tt[i][s] = false;
-            }
+    long getRowCount() {
+        return this.row_count;
+    }
+
+    long getWordCount() {
+        return this.outputs.getWordCount();
+    }
+
+    long getWord(long index) {
+        return this.outputs.getWord(index);
+    }
+
+    public boolean getOutput(long row) {
+        return ((this.outputs.getWord(row >>> 6) >>> (row & 63)) & 1) == 1;
+    }
+
+    private TruthTable getInvertedTT() {
+        long wordCount = this.outputs.getWordCount();
+        TTStorage inverted = this.outputs.newStorage(this.col_count - 1, wordCount);
+
+        for (long i = 0; i < wordCount; i++) {
+            inverted.setWord(i, ~this.outputs.getWord(i));
         }
+        inverted.setWord(wordCount - 1, inverted.getWord(wordCount - 1) & lastWordMask(this.row_count));
+
+        return new TruthTable(inverted, this.col_count - 1);
+    }
+
+    private static long two_exp(int exp) {
+        return 1L << exp;
     }
 
     /**
@@ -93,24 +188,115 @@ public class TruthTable {
      * @return The sum of products reduced form of the expression
      */
     public String getSOP(ArrayList varNames) {
-        QMReducer aReducer = new QMReducer(varNames.size());
-        aReducer.setBoolTT(this.getTT());
-        return aReducer.reduce(varNames);
+        return this.getSOP(varNames, REDUCE_GREEDY);
+    }
+
+    /**
+     * Get Sum Of Products
+     *
+     * @param varNames Names of the variables corresponding to the columns in the truth table
+     * @param method   REDUCE_GREEDY, REDUCE_EXACT or REDUCE_ESPRESSO
+     * @return The sum of products reduced form of the expression
+     */
+    public String getSOP(ArrayList varNames, int method) {
+        if (this.getVarCount() <= NPNTable.MAX_VARS)
+            return NPNTable.getSOP(this, varNames); // Already the smallest, whatever the method
+
+        return QMReducer.formatCover(this.getSOPCover(varNames.size(), method, new boolean[1]), varNames);
+    }
+
+    private QMGroup getSOPCover(int varCount, int method, boolean[] bounded) {
+        // Looks the cover up in the shared cache and store first, and remembers it once
+        // found, along with the primes, which the other QM method can pick from. An exact
+        // cover whose search ran out of budget isn't remembered, since another run could
+        // find a smaller one, and bounded[0] is set so the caller doesn't either.
+        Object key = ReductionCache.keyOf(this);
+        QMGroup cover = lookUp(key, ReductionCache.SOP + method);
+        if (cover != null)
+            return cover;
+
+        if (method == REDUCE_ESPRESSO) {
+            EspressoReducer aReducer = new EspressoReducer(varCount);
+            aReducer.setTruthTable(this);
+            cover = aReducer.reduceCover();
+        } else {
+            QMReducer aReducer = new QMReducer(varCount);
+            QMGroup primes = lookUp(key, ReductionCache.PRIMES);
+            if (primes != null) {
+                aReducer.setTruthTable(this, primes);
+            } else {
+                aReducer.setTruthTable(this);
+                remember(key, ReductionCache.PRIMES, aReducer.getPrimes());
+            }
+            cover = aReducer.reduceCover(method);
+            bounded[0] = method == REDUCE_EXACT && !aReducer.isCoverOptimal();
+        }
+
+        if (!bounded[0])
+            remember(key, ReductionCache.SOP + method, cover);
+        return cover;
+    }
+
+    private static QMGroup lookUp(Object key, int slot) {
+        // Tries the cache, then the store if there's one, moving what's found there to the cache
+        QMGroup cubes = ReductionCache.getShared().get(key, slot);
+        ReductionStore store = ReductionStore.getShared();
+        if (cubes == null && store != null) {
+            cubes = store.get(key, slot);
+            if (cubes != null)
+                ReductionCache.getShared().put(key, slot, cubes);
+        }
+        return cubes;
+    }
+
+    private static void remember(Object key, int slot, QMGroup cubes) {
+        ReductionCache.getShared().put(key, slot, cubes);
+        ReductionStore store = ReductionStore.getShared();
+        if (store != null)
+            store.put(key, slot, cubes);
     }
 
     public String getPOS(ArrayList varNames) {
+        return this.getPOS(varNames, REDUCE_GREEDY);
+    }
+
+    /**
+     * Get Product Of Sums, found by inverting the sum of products of the inverted function
+     *
+     * @param varNames Names of the variables corresponding to the columns in the truth table
+     * @param method   REDUCE_GREEDY, REDUCE_EXACT or REDUCE_ESPRESSO
+     * @return The product of sums reduced form of the expression
+     */
+    public String getPOS(ArrayList varNames, int method) {
         BExprTree pos;
-        QMReducer aReducer = new QMReducer(varNames.size());
-        if (varNames.size() > 1)
-            aReducer.setBoolTT(this.getInvertedTT());
-        else
-            aReducer.setBoolTT(this.getTT());
+        int constant = this.getConstant();
+        if (constant != -1)
+            return constant == 1 ? "TRUE" : "FALSE";
+
+        String sop;
+        if (this.getVarCount() <= NPNTable.MAX_VARS) {
+            TruthTable inverted = this.getInvertedTT();
+            sop = inverted.getSOP(varNames, method);
+            inverted.close();
+        } else {
+            // The cover of the inverse is kept with this function, so the inverted table
+            // is only built once
+            Object key = ReductionCache.keyOf(this);
+            QMGroup cover = lookUp(key, ReductionCache.POS + method);
+            if (cover == null) {
+                boolean[] bounded = new boolean[1];
+                TruthTable inverted = this.getInvertedTT();
+                cover = inverted.getSOPCover(varNames.size(), method, bounded);
+                inverted.close();
+                if (!bounded[0])
+                    remember(key, ReductionCache.POS + method, cover);
+            }
+            sop = QMReducer.formatCover(cover, varNames);
+        }
 
         try {
-            pos = new BExprTree(aReducer.reduce(varNames));
-            //pos.invert();
-            if (pos.getVarCount() > 1)
-                pos.invert();
+            pos = new BExprTree(sop);
+            pos.invert();
             return pos.toString();
         } catch (Exception e) {
             e.printStackTrace();
@@ -118,80 +304,168 @@ public class TruthTable {
         }
     }
 
+    private int getConstant() {
+        // 1 or 0 if all the outputs are the same, -1 otherwise
+        long wordCount = this.outputs.getWordCount(), word;
+        long lastMask = lastWordMask(this.row_count);
+        boolean hasOnes = false, hasZeros = false;
+        for (long i = 0; i < wordCount && !(hasOnes && hasZeros); i++) {
+            word = this.outputs.getWord(i);
+            hasOnes |= word != 0;
+            hasZeros |= word != (i == wordCount - 1 ? lastMask : -1L);
+        }
+        return hasOnes && hasZeros ? -1 : hasOnes ? 1 : 0;
+    }
+
     public Boolean[][] getWrappedTable() {
         // Returns the truth table as wrapped Boolean or Integer types
-        Boolean[][] toRet = new Boolean[this.row_count][this.col_count];
-        for (int i = 0; i < this.row_count; i++) {
-            for (int s = 0; s < this.col_count; s++) {
-                toRet[i][s] = (this.tt[i][s]) ? Boolean.TRUE : Boolean.FALSE;
+        if (this.row_count > Integer.MAX_VALUE)
+            throw new IllegalStateException("The truth table has too many rows to be wrapped");
+
+        int rowCount = (int) this.row_count;
+        Boolean[][] toRet = new Boolean[rowCount][this.col_count];
+        for (int i = 0; i < rowCount; i++) {
+            for (int s = 0; s < this.col_count - 1; s++) {
+                toRet[i][s] = (((i >> s) & 1) == 1) ? Boolean.TRUE : Boolean.FALSE;
             }
+            toRet[i][this.col_count - 1] = this.getOutput(i) ? Boolean.TRUE : Boolean.FALSE;
         }
         return toRet;
     }
 
-    public void reduceVars() {
-        //reduces the truth table by getting rid of redundant variables
-        //returns an ArrayList of the vars minus the redundant ones
-        int patternLength;
-        int patternCount = 0;
-        String pattern, prevPattern;
-        boolean patternsMatch;
-        ArrayList toRemove = new ArrayList();
-
-        for (int i = 0; i < this.col_count - 1; i++) {
-            pattern = "";
-            prevPattern = "";
-            patternLength = this.row_count / (int) Math.pow(2.0, (double) (i + 1));
-            patternsMatch = true;
-            for (int s = 0; s < this.row_count; s++) {
-                if (patternsMatch) {
-                    pattern += (this.tt[s][this.col_count - 1] ? "1" : "0");
-                    if ((s + 1) % patternLength == 0) {
-                        patternCount++;
-                        if (patternCount % 2 == 0) {
-                            if (!prevPattern.equals(pattern))
-                                patternsMatch = false;
-                        }
-                        prevPattern = pattern;
-                        pattern = "";
-                    }
-
-                }
+    /**
+     * Checks whether the output depends on a variable, that is whether flipping
+     * it changes the output of at least one row. The table isn't modified.
+     *
+     * @param var the index of the variable
+     * @return true if the variable is in the support of the function
+     */
+    public boolean dependsOn(int var) {
+        long wordCount = this.outputs.getWordCount();
+        long word, stride;
+
+        if (var < 6) {
+            // Both cofactors are in the same words, the rows where the variable is 0 are
+            // compared with the rows 2^var above them
+            int shift = 1 << var;
+            long zeroRows = ~COLUMN_PATTERNS[var];
+            for (long i = 0; i < wordCount; i++) {
+                word = this.outputs.getWord(i);
+                if (((word ^ (word >>> shift)) & zeroRows) != 0)
+                    return true;
             }
+            return false;
+        }
 
-            if (patternsMatch) {
-                toRemove.add(new Integer(i));
+        // The cofactors are made of whole words, 2^(var - 6) words apart
+        stride = 1L << (var - 6);
+        for (long base = 0; base < wordCount; base += 2 * stride) {
+            for (long i = base; i < base + stride; i++) {
+                if (this.outputs.getWord(i) != this.outputs.getWord(i + stride))
+                    return true;
             }
         }
+        return false;
+    }
+
+    /**
+     * @return for every variable, whether the output depends on it
+     */
+    public boolean[] getSupport() {
+        boolean[] support = new boolean[this.col_count - 1];
+        for (int i = 0; i < support.length; i++) {
+            support[i] = this.dependsOn(i);
+        }
+        return support;
+    }
+
+    /**
+     * @return a truth table of the same function without the variables it doesn't depend on
+     */
+    public TruthTable getReducedTT() {
+        return this.getReducedTT(this.getSupport());
+    }
 
-        int index;
-        for (int i = 0; i < toRemove.size(); i++) {
-            index = ((Integer) toRemove.get(i)).intValue() - i; // Must subtract i because the cols will be shifting
-            this.removeCol(index);
+    TruthTable getReducedTT(boolean[] support) {
+        int keptCount = 0;
+        for (int i = 0; i < support.length; i++) {
+            if (support[i])
+                keptCount++;
         }
+        return new TruthTable(this.compact(support, keptCount), keptCount);
     }
 
-    private void removeCol(int idx) {
-        //removes a column (var) and it's associated inputs
-        boolean[][] cleanTT = new boolean[this.row_count / 2][this.col_count - 1];
-        int patternLength = this.row_count / (int) Math.pow(2.0, (double) (idx + 1));
-        boolean saveRow = false;
-        int newIndex = 0;
-        for (int i = 0; i < this.row_count; i++) {
-            if (i % patternLength == 0)
-                saveRow = !saveRow;
+    public void reduceVars() {
+        //reduces the truth table by getting rid of redundant variables
+        boolean[] support = this.getSupport();
+        int keptCount = 0;
+        for (int i = 0; i < support.length; i++) {
+            if (support[i])
+                keptCount++;
+        }
+
+        if (keptCount == support.length)
+            return;
 
-            if (saveRow) {
-                System.arraycopy(this.tt[i], 0, cleanTT[newIndex], 0, idx);
+        TTStorage clean = this.compact(support, keptCount);
+        this.outputs.close();
+        this.outputs = clean;
+        this.row_count = two_exp(keptCount);
+        this.col_count = keptCount + 1;
+    }
 
-                System.arraycopy(this.tt[i], idx + 1, cleanTT[newIndex], idx + 1 - 1, this.col_count - (idx + 1));
-                newIndex++;
+    private TTStorage compact(boolean[] keep, int keptCount) {
+        // Copies the rows where all the removed variables are 0 in a single pass. The
+        // kept variables stay in the same order, so the low ones (below 6) select the
+        // bits copied out of every word, and the high ones select the words.
+        long keptHigh = 0; // Bit s - 6 is set for every kept variable s >= 6
+        int keptLow = 0; // Bit s is set for every kept variable s < 6
+        int lowCount = 0;
+        for (int s = 0; s < keep.length; s++) {
+            if (!keep[s])
+                continue;
+
+            if (s < 6) {
+                keptLow |= 1 << s;
+                lowCount++;
+            } else {
+                keptHigh |= 1L << (s - 6);
             }
         }
 
-        this.row_count /= 2;
-        this.col_count--;
-        this.tt = cleanTT;
+        // The positions of the copied bits within a word, in increasing order
+        int chunk = 1 << lowCount;
+        int[] positions = new int[chunk];
+        int position = 0, p = 0;
+        do {
+            positions[p++] = position;
+            position = (position - keptLow) & keptLow; // The next subset of keptLow
+        } while (position != 0);
+
+        long newRowCount = two_exp(keptCount);
+        TTStorage clean = this.outputs.newStorage(keptCount, wordCount(newRowCount));
+        long index = 0, bitPos = 0, word, bits, newWord = 0;
+        do {
+            word = this.outputs.getWord(index);
+            if (chunk == 64) {
+                clean.setWord(bitPos >>> 6, word);
+            } else {
+                bits = 0;
+                for (int i = 0; i < chunk; i++) {
+                    bits |= ((word >>> positions[i]) & 1) << i;
+                }
+                newWord |= bits << (bitPos & 63);
+                if (((bitPos + chunk) & 63) == 0 || bitPos + chunk == newRowCount) {
+                    clean.setWord(bitPos >>> 6, newWord);
+                    newWord = 0;
+                }
+            }
+
+            bitPos += chunk;
+            index = (index - keptHigh) & keptHigh; // The next word where all the removed variables are 0
+        } while (index != 0);
+
+        return clean;
     }
 
     public boolean equals(Object o) {
@@ -203,11 +477,23 @@ public class TruthTable {
         if (aTT.row_count != this.row_count || aTT.col_count != this.col_count)
             return false;
 
-        for (int i = 0; i < this.row_count; i++) {
-            if (this.tt[i][this.col_count - 1] != aTT.tt[i][this.col_count - 1])
+        long wordCount = this.outputs.getWordCount();
+        for (long i = 0; i < wordCount; i++) {
+            if (this.outputs.getWord(i) != aTT.outputs.getWord(i))
                 return false;
         }
         return true;
     }
 
-}
\ No newline at end of file
+    public int hashCode() {
+        long wordCount = this.outputs.getWordCount();
+        long word;
+        int hash = this.col_count;
+        for (long i = 0; i < wordCount; i++) {
+            word = this.outputs.getWord(i);
+            hash = 31 * hash + (int) (word ^ (word >>> 32));
+        }
+        return hash;
+    }
+
+}